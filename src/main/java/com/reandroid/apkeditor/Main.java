@@ -18,10 +18,12 @@ package com.reandroid.apkeditor;
 import com.reandroid.apk.xmlencoder.EncodeException;
 import com.reandroid.apkeditor.compile.BuildOptions;
 import com.reandroid.apkeditor.decompile.DecompileOptions;
+import com.reandroid.apkeditor.diff.DiffOptions;
 import com.reandroid.apkeditor.info.InfoOptions;
 import com.reandroid.apkeditor.merge.MergerOptions;
 import com.reandroid.apkeditor.protect.ProtectorOptions;
 import com.reandroid.apkeditor.refactor.RefactorOptions;
+import com.reandroid.apkeditor.search.SearchOptions;
 import com.reandroid.arsc.ARSCLib;
 import com.reandroid.arsc.coder.xml.XmlEncodeException;
 import com.reandroid.jcommand.CommandHelpBuilder;
@@ -41,7 +43,9 @@ import com.reandroid.jcommand.exceptions.CommandException;
                 MergerOptions.class,
                 RefactorOptions.class,
                 ProtectorOptions.class,
-                InfoOptions.class
+                InfoOptions.class,
+                DiffOptions.class,
+                SearchOptions.class
         }
 )
 public class Main {
@@ -34,7 +34,8 @@ import java.io.File;
                 "build_example_1",
                 "build_example_2",
                 "build_example_3",
-                "build_example_4"
+                "build_example_4",
+                "build_example_5"
         })
 public class BuildOptions extends OptionsWithFramework {
 
@@ -83,6 +84,9 @@ public class BuildOptions extends OptionsWithFramework {
     @OptionArg(name = "-dex-profile", flag = true, description = "encode_dex_profile")
     public boolean dexProfile;
 
+    @OptionArg(name = "-watch", flag = true, description = "build_watch")
+    public boolean watch;
+
     public BuildOptions() {
         super();
     }
@@ -98,6 +102,7 @@ public class BuildOptions extends OptionsWithFramework {
         super.validateInput(isFile, !isFile);
         evaluateInputDirectoryType();
         validateSignaturesDirectory();
+        validateWatch();
     }
 
     private void evaluateInputDirectoryType() {
@@ -137,6 +142,11 @@ public class BuildOptions extends OptionsWithFramework {
             throw new CommandException("invalid_sig_parameter_combination");
         }
     }
+    private void validateWatch() {
+        if (watch && TYPE_SIG.equals(type)) {
+            throw new CommandException("build_watch_sig");
+        }
+    }
     @Override
     public File generateOutputFromInput(File file) {
         return generateOutputFromInput(file, "_out.apk");
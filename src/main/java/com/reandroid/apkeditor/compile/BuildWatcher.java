@@ -0,0 +1,124 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.compile;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches all directories of a build directory. Changes are reported once no further
+ * change arrives within the debounce interval, so saving many files (e.g. a refactor of
+ * an editor) triggers one build. Hidden top level directories (.cache ...) written by
+ * the builder itself and the output apk are ignored.
+ * */
+class BuildWatcher implements Closeable {
+
+    private final Path root;
+    private final Path outputFile;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchKeys;
+
+    BuildWatcher(File directory, File outputFile) throws IOException {
+        this.root = directory.toPath().toAbsolutePath().normalize();
+        this.outputFile = outputFile.toPath().toAbsolutePath().normalize();
+        this.watchService = root.getFileSystem().newWatchService();
+        this.watchKeys = new HashMap<>();
+        registerTree(root);
+    }
+
+    /**
+     * Blocks until files changed
+     * @return changed paths relative to build directory, "*" if events were lost
+     * */
+    Set<String> awaitChanges() throws IOException, InterruptedException {
+        Set<String> results = new TreeSet<>();
+        while (results.isEmpty()) {
+            collect(watchService.take(), results);
+        }
+        WatchKey watchKey;
+        while ((watchKey = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+            collect(watchKey, results);
+        }
+        return results;
+    }
+    private void collect(WatchKey watchKey, Set<String> results) throws IOException {
+        Path dir = watchKeys.get(watchKey);
+        for (WatchEvent<?> event : watchKey.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                results.add("*");
+                continue;
+            }
+            if (dir == null) {
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (isIgnored(path)) {
+                continue;
+            }
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                    && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                registerTree(path);
+            }
+            results.add(root.relativize(path).toString().replace(File.separatorChar, '/'));
+        }
+        if (!watchKey.reset()) {
+            watchKeys.remove(watchKey);
+        }
+    }
+    private boolean isIgnored(Path path) {
+        if (path.startsWith(outputFile.getParent())) {
+            String name = path.getFileName().toString();
+            if (name.startsWith(outputFile.getFileName().toString())) {
+                // output apk and its temporary file
+                return true;
+            }
+        }
+        if (!path.startsWith(root) || path.equals(root)) {
+            return true;
+        }
+        return root.relativize(path).getName(0).toString().startsWith(".");
+    }
+    private void registerTree(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(root) && isIgnored(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                WatchKey watchKey = dir.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                watchKeys.put(watchKey, dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private static final long DEBOUNCE_MILLIS = 300;
+}
@@ -19,20 +19,36 @@ import com.reandroid.apk.ApkModule;
 import com.reandroid.apk.ApkModuleJsonEncoder;
 import com.reandroid.apk.ApkModuleRawEncoder;
 import com.reandroid.apk.ApkModuleXmlEncoder;
+import com.reandroid.apk.DexEncoder;
 import com.reandroid.apk.DexProfileEncoder;
 import com.reandroid.apkeditor.CommandExecutor;
 import com.reandroid.apkeditor.Options;
 import com.reandroid.apkeditor.smali.SmaliCompiler;
+import com.reandroid.apkeditor.utils.PassthroughFiles;
+import com.reandroid.app.AndroidManifest;
 import com.reandroid.archive.ArchiveFile;
+import com.reandroid.archive.InputSource;
 import com.reandroid.archive.block.ApkSignatureBlock;
 import com.reandroid.archive.writer.ApkFileWriter;
 import com.reandroid.arsc.coder.xml.XmlCoder;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 
 public class Builder extends CommandExecutor<BuildOptions> {
 
+    private List<ApkModule> mFrameworks;
+    private Set<String> mChanges;
+    private List<InputSource> mDexFiles;
+    private ResBuildCache mResBuildCache;
+
     public Builder(BuildOptions options){
         super(options, "[BUILD] ");
     }
@@ -41,6 +57,14 @@ public class Builder extends CommandExecutor<BuildOptions> {
     public void runCommand() throws IOException {
         BuildOptions options = getOptions();
         delete(options.outputFile);
+        if(options.watch){
+            watch();
+        }else {
+            build();
+        }
+    }
+    private void build() throws IOException {
+        BuildOptions options = getOptions();
         String type = options.type;
         if (Options.TYPE_SIG.equals(type)) {
             restoreSignatures();
@@ -52,6 +76,74 @@ public class Builder extends CommandExecutor<BuildOptions> {
             buildJson();
         }
     }
+    /**
+     * Rebuilds on every change of input directory until the process is stopped. Unchanged
+     * smali directories and res xml files are taken from .cache, the output apk is replaced
+     * only after a successful build. Dex files of the previous build are reused while no
+     * smali/ path nor the manifest changed, resources/ is hashed again only when one of its
+     * paths changed and frameworks are loaded once.
+     * <br/>
+     * The watcher is registered before the first build, files saved meanwhile trigger
+     * the first rebuild.
+     * */
+    private void watch() throws IOException {
+        BuildOptions options = getOptions();
+        try (BuildWatcher watcher = new BuildWatcher(options.inputFile, options.outputFile)) {
+            build();
+            while (true) {
+                logMessage("Watching: " + options.inputFile);
+                Set<String> changes = watcher.awaitChanges();
+                logMessage("Changed: " + summarize(changes));
+                long start = System.currentTimeMillis();
+                mChanges = changes;
+                try {
+                    build();
+                } catch (IOException | RuntimeException exception) {
+                    logMessage("Build failed: " + exception.getMessage());
+                    continue;
+                }
+                logMessage("Rebuilt in " + (System.currentTimeMillis() - start) + "ms");
+            }
+        } catch (InterruptedException exception) {
+            throw new InterruptedIOException(exception.getMessage());
+        }
+    }
+    /**
+     * @return true if a path under dir changed since the previous build, always true for
+     * the first build
+     * */
+    private boolean isChanged(String dir) {
+        Set<String> changes = this.mChanges;
+        if (changes == null || changes.contains("*")) {
+            return true;
+        }
+        for (String path : changes) {
+            if (path.equals(dir) || path.startsWith(dir + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+    private boolean isDexChanged() {
+        if (isChanged(SMALI_DIR)) {
+            return true;
+        }
+        for (String path : mChanges) {
+            // min sdk of manifest is the api level of dex
+            if (path.startsWith(AndroidManifest.FILE_NAME)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    private static String summarize(Set<String> changes) {
+        Iterator<String> iterator = changes.iterator();
+        String first = iterator.next();
+        if (changes.size() == 1) {
+            return first;
+        }
+        return first + " and " + (changes.size() - 1) + " more";
+    }
     private void restoreSignatures() throws IOException {
         logMessage("Restoring signatures ...");
         BuildOptions options = getOptions();
@@ -74,7 +166,7 @@ public class Builder extends CommandExecutor<BuildOptions> {
 
         BuildOptions options = getOptions();
 
-        encoder.setDexEncoder(getSmaliCompiler());
+        encoder.setDexEncoder(getDexEncoder());
         encoder.setDexProfileEncoder(getDexProfileEncoder());
 
         encoder.scanDirectory(options.inputFile);
@@ -99,19 +191,69 @@ public class Builder extends CommandExecutor<BuildOptions> {
 
         BuildOptions options = getOptions();
 
-        encoder.setDexEncoder(getSmaliCompiler());
+        encoder.setDexEncoder(getDexEncoder());
         encoder.setDexProfileEncoder(getDexProfileEncoder());
 
         ApkModule loadedModule = encoder.getApkModule();
         loadedModule.setAPKLogger(this);
 
-        loadedModule.setPreferredFramework(options.frameworkVersion);
-        for (File file : options.frameworks) {
-            loadedModule.addExternalFramework(file);
+        addFrameworks(loadedModule);
+        ResBuildCache resBuildCache = null;
+        if(!options.noCache){
+            resBuildCache = getResBuildCache();
         }
         encoder.scanDirectory(options.inputFile);
         loadedModule = encoder.getApkModule();
-        writeApk(loadedModule);
+        // replaces placeholders of passthrough res files, they are never encoded
+        ArchiveFile passthroughSource = restorePassthroughFiles(loadedModule);
+        if(resBuildCache != null){
+            resBuildCache.restore(loadedModule);
+            resBuildCache.store(loadedModule);
+        }
+        writeApk(loadedModule, passthroughSource);
+    }
+    private ResBuildCache getResBuildCache() throws IOException {
+        ResBuildCache resBuildCache = this.mResBuildCache;
+        if (resBuildCache != null && !isChanged(RESOURCES_DIR)) {
+            logMessage("Resources unchanged, skipped scan");
+            return resBuildCache;
+        }
+        BuildOptions options = getOptions();
+        resBuildCache = new ResBuildCache(options.inputFile, this);
+        resBuildCache.scan(buildFrameworkContext(options));
+        if (options.watch) {
+            this.mResBuildCache = resBuildCache;
+        }
+        return resBuildCache;
+    }
+    /**
+     * Frameworks are loaded on first build and kept for rebuilds of -watch
+     * */
+    private void addFrameworks(ApkModule apkModule) throws IOException {
+        BuildOptions options = getOptions();
+        apkModule.setPreferredFramework(options.frameworkVersion);
+        List<ApkModule> frameworks = this.mFrameworks;
+        if (frameworks == null) {
+            frameworks = new ArrayList<>();
+            for (File file : options.frameworks) {
+                logMessage("Loading framework: " + file);
+                frameworks.add(ApkModule.loadApkFile(file));
+            }
+            this.mFrameworks = frameworks;
+        }
+        for (ApkModule framework : frameworks) {
+            apkModule.addExternalFramework(framework);
+        }
+    }
+    private static String buildFrameworkContext(BuildOptions options){
+        StringBuilder builder = new StringBuilder();
+        builder.append("framework-version=").append(options.frameworkVersion);
+        for (File file : options.frameworks) {
+            builder.append("\nframework=").append(file.getAbsolutePath())
+                    .append(':').append(file.length())
+                    .append(':').append(file.lastModified());
+        }
+        return builder.toString();
     }
     public void buildRaw() throws IOException {
         logMessage("Scanning Raw directory ...");
@@ -124,30 +266,72 @@ public class Builder extends CommandExecutor<BuildOptions> {
             logMessage("Keep original binaries");
         }
 
-        encoder.setDexEncoder(getSmaliCompiler());
+        encoder.setDexEncoder(getDexEncoder());
         encoder.setDexProfileEncoder(getDexProfileEncoder());
 
         ApkModule loadedModule = encoder.getApkModule();
         loadedModule.setAPKLogger(this);
 
-        loadedModule.setPreferredFramework(options.frameworkVersion);
-        for(File file : options.frameworks){
-            loadedModule.addExternalFramework(file);
-        }
+        addFrameworks(loadedModule);
         encoder.scanDirectory(options.inputFile);
         loadedModule = encoder.getApkModule();
         writeApk(loadedModule);
     }
     private void writeApk(ApkModule apkModule) throws IOException {
+        writeApk(apkModule, restorePassthroughFiles(apkModule));
+    }
+    /**
+     * @param passthroughSource archive of passthrough files already added to apkModule
+     * */
+    private void writeApk(ApkModule apkModule, ArchiveFile passthroughSource) throws IOException {
         BuildOptions options = getOptions();
         if (!Options.TYPE_RAW.equals(options.type) && !Options.TYPE_SIG.equals(options.type)) {
             applyExtractNativeLibs(apkModule, options.getExtractNativeLibs());
         }
         logMessage("Writing apk...");
-        apkModule.writeApk(options.outputFile, null);
+        File outputFile = options.outputFile;
+        if (options.watch) {
+            // keep previous apk until the new one is complete
+            outputFile = new File(outputFile.getParentFile(), outputFile.getName() + ".tmp");
+        }
+        apkModule.writeApk(outputFile, null);
         apkModule.close();
+        if (passthroughSource != null) {
+            passthroughSource.close();
+        }
+        if (options.watch) {
+            Files.move(outputFile.toPath(), options.outputFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
         logMessage("Saved to: " + options.outputFile);
     }
+    private ArchiveFile restorePassthroughFiles(ApkModule apkModule) throws IOException {
+        ArchiveFile archive = PassthroughFiles.restore(getOptions().inputFile, apkModule);
+        if (archive != null) {
+            logMessage("Restored passthrough files");
+        }
+        return archive;
+    }
+    /**
+     * With -watch, dex files of previous build are returned while smali is unchanged
+     * */
+    private DexEncoder getDexEncoder() {
+        SmaliCompiler smaliCompiler = getSmaliCompiler();
+        if (!getOptions().watch) {
+            return smaliCompiler;
+        }
+        return (apkModuleEncoder, mainDir) -> {
+            List<InputSource> dexFiles = this.mDexFiles;
+            if (dexFiles != null && !isDexChanged()) {
+                logMessage("Smali unchanged, reused dex files: " + dexFiles.size());
+                return dexFiles;
+            }
+            this.mDexFiles = null;
+            dexFiles = smaliCompiler.buildDexFiles(apkModuleEncoder, mainDir);
+            this.mDexFiles = dexFiles;
+            return dexFiles;
+        };
+    }
     private SmaliCompiler getSmaliCompiler() {
         SmaliCompiler smaliCompiler = new SmaliCompiler(getOptions());
         smaliCompiler.setApkLogger(this);
@@ -158,4 +342,7 @@ public class Builder extends CommandExecutor<BuildOptions> {
         encoder.setApkLogger(this);
         return encoder;
     }
+
+    private static final String SMALI_DIR = "smali";
+    private static final String RESOURCES_DIR = "resources";
 }
@@ -0,0 +1,264 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.compile;
+
+import com.reandroid.apk.APKLogger;
+import com.reandroid.apk.ApkModule;
+import com.reandroid.apk.ResFile;
+import com.reandroid.apk.xmlencoder.XMLEncodeSource;
+import com.reandroid.archive.ByteInputSource;
+import com.reandroid.archive.InputSource;
+import com.reandroid.arsc.chunk.PackageBlock;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Binary res xml files of previous builds, kept under .cache/res of the build directory.
+ * A compiled file is reused when its source text and the table key are unchanged. Table
+ * key covers everything that can change resource ids: content of values directories,
+ * package files, the set of res file paths, @+id declarations and framework options.
+ * <br/>
+ * Source files are matched to res entries by decoded path (res/type-qualifiers/name.xml),
+ * paths found in more than one package are not cached.
+ * */
+class ResBuildCache {
+
+    private final File inputDirectory;
+    private final File cacheDirectory;
+    private final APKLogger logger;
+    private final Map<String, String> sourceHashes;
+    private final Set<String> ambiguousPaths;
+    private final Map<String, String> pendingKeys;
+    private final Set<String> usedKeys;
+    private String tableKey;
+
+    ResBuildCache(File inputDirectory, APKLogger logger) {
+        this.inputDirectory = inputDirectory;
+        this.cacheDirectory = new File(new File(inputDirectory, CACHE_DIR), RES_CACHE_DIR);
+        this.logger = logger;
+        this.sourceHashes = new HashMap<>();
+        this.ambiguousPaths = new HashSet<>();
+        this.pendingKeys = new HashMap<>();
+        this.usedKeys = new HashSet<>();
+    }
+
+    /**
+     * Hashes res sources, must be called before the directory is encoded
+     * @param context options other than sources that change the table, e.g. frameworks
+     * */
+    void scan(String context) throws IOException {
+        MessageDigest tableDigest = newDigest();
+        update(tableDigest, context);
+        Set<String> idNames = new TreeSet<>();
+        File[] packageDirs = new File(inputDirectory, RESOURCES_DIR).listFiles();
+        if (packageDirs != null) {
+            Arrays.sort(packageDirs);
+            for (File packageDir : packageDirs) {
+                if (packageDir.isDirectory()) {
+                    scanPackage(packageDir, tableDigest, idNames);
+                }
+            }
+        }
+        for (String idName : idNames) {
+            update(tableDigest, "id:" + idName);
+        }
+        this.tableKey = toHex(tableDigest.digest());
+    }
+    private void scanPackage(File packageDir, MessageDigest tableDigest, Set<String> idNames) throws IOException {
+        List<String> paths = new ArrayList<>();
+        listFiles(packageDir, "", paths);
+        Collections.sort(paths);
+        update(tableDigest, "package:" + packageDir.getName());
+        for (String path : paths) {
+            File file = new File(packageDir, path);
+            if (!path.startsWith(RES_PREFIX)) {
+                update(tableDigest, "file:" + path + ":" + hash(file));
+                continue;
+            }
+            if (path.startsWith(RES_PREFIX + "values")) {
+                update(tableDigest, "values:" + path + ":" + hash(file));
+                continue;
+            }
+            update(tableDigest, "res:" + path);
+            if (!path.endsWith(".xml")) {
+                continue;
+            }
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            Matcher matcher = PATTERN_NEW_ID.matcher(new String(bytes, StandardCharsets.UTF_8));
+            while (matcher.find()) {
+                idNames.add(matcher.group(1));
+            }
+            if (sourceHashes.put(path, hash(bytes)) != null) {
+                ambiguousPaths.add(path);
+            }
+        }
+    }
+    /**
+     * Replaces res xml files of unchanged sources with their compiled bytes, starts the
+     * bookkeeping of a build, the instance is reused by rebuilds of -watch
+     * */
+    void restore(ApkModule apkModule) throws IOException {
+        pendingKeys.clear();
+        usedKeys.clear();
+        int restored = 0;
+        for (ResFile resFile : apkModule.listResFiles()) {
+            InputSource inputSource = resFile.getInputSource();
+            if (!isEncodeSource(inputSource)) {
+                continue;
+            }
+            String key = computeKey(resFile);
+            if (key == null) {
+                continue;
+            }
+            File file = toCacheFile(key);
+            if (!file.isFile()) {
+                pendingKeys.put(inputSource.getAlias(), key);
+                continue;
+            }
+            replace(apkModule, inputSource, Files.readAllBytes(file.toPath()));
+            usedKeys.add(key);
+            restored++;
+        }
+        logger.logMessage("Res cache: reused = " + restored + ", changed = " + pendingKeys.size());
+    }
+    /**
+     * Saves compiled bytes of changed files and removes entries not used by this build.
+     * Files not encoded yet are encoded here and replaced, the writer does not encode again.
+     * */
+    void store(ApkModule apkModule) throws IOException {
+        for (ResFile resFile : apkModule.listResFiles()) {
+            InputSource inputSource = resFile.getInputSource();
+            String key = pendingKeys.get(inputSource.getAlias());
+            if (key == null) {
+                continue;
+            }
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            inputSource.write(outputStream);
+            byte[] bytes = outputStream.toByteArray();
+            if (isEncodeSource(inputSource)) {
+                replace(apkModule, inputSource, bytes);
+            }
+            File file = toCacheFile(key);
+            File dir = file.getParentFile();
+            if (!dir.exists()) {
+                dir.mkdirs();
+            }
+            Files.write(file.toPath(), bytes);
+            usedKeys.add(key);
+        }
+        pendingKeys.clear();
+        File[] files = cacheDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(EXTENSION) && !usedKeys.contains(
+                        name.substring(0, name.length() - EXTENSION.length()))) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * True for res xml sources that encode on write. XMLEncodeSource extends
+     * ByteInputSource, it is told apart from compiled bytes by its concrete type.
+     * */
+    private static boolean isEncodeSource(InputSource inputSource) {
+        return inputSource instanceof XMLEncodeSource;
+    }
+    private String computeKey(ResFile resFile) throws IOException {
+        String path = resFile.buildPath(PackageBlock.RES_DIRECTORY_NAME);
+        if (ambiguousPaths.contains(path)) {
+            return null;
+        }
+        String sourceHash = sourceHashes.get(path);
+        if (sourceHash == null) {
+            return null;
+        }
+        MessageDigest digest = newDigest();
+        update(digest, tableKey);
+        update(digest, resFile.getInputSource().getAlias());
+        update(digest, sourceHash);
+        return toHex(digest.digest());
+    }
+    private File toCacheFile(String key) {
+        return new File(cacheDirectory, key + EXTENSION);
+    }
+    private static void replace(ApkModule apkModule, InputSource inputSource, byte[] bytes) {
+        ByteInputSource compiled = new ByteInputSource(bytes, inputSource.getAlias());
+        compiled.copyAttributes(inputSource);
+        apkModule.add(compiled);
+    }
+    private static void listFiles(File dir, String prefix, List<String> results) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String path = prefix + file.getName();
+            if (file.isDirectory()) {
+                listFiles(file, path + "/", results);
+            } else {
+                results.add(path);
+            }
+        }
+    }
+
+    private static String hash(File file) throws IOException {
+        return hash(Files.readAllBytes(file.toPath()));
+    }
+    private static String hash(byte[] bytes) throws IOException {
+        MessageDigest digest = newDigest();
+        digest.update(bytes);
+        return toHex(digest.digest());
+    }
+    private static void update(MessageDigest digest, String text) {
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+    }
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IOException(exception);
+        }
+    }
+    private static String toHex(byte[] hash) {
+        StringBuilder builder = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+
+    private static final Pattern PATTERN_NEW_ID = Pattern.compile("@\\+id/([\\w.]+)");
+
+    private static final String CACHE_DIR = ".cache";
+    private static final String RES_CACHE_DIR = "res";
+    private static final String RESOURCES_DIR = "resources";
+    private static final String RES_PREFIX = "res/";
+    private static final String EXTENSION = ".bin";
+}
@@ -0,0 +1,164 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.decompile;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Selects which parts of apk are decoded. Rejected files are kept in binary form
+ * and restored on build, AndroidManifest.xml and resources.arsc are always decoded.
+ * <br/>
+ * Path globs: '*' matches within one directory, '**' matches across directories and
+ * '?' matches one character. Include globs do not apply to dex files, dex files are
+ * selected by class prefixes.
+ * */
+public class DecodeFilter {
+
+    private final List<Pattern> includePaths;
+    private final List<Pattern> excludePaths;
+    private final Set<String> includeTypes;
+    private final Set<String> excludeTypes;
+    private final List<String> includeClasses;
+    private final List<String> excludeClasses;
+
+    DecodeFilter(DecompileOptions options) {
+        this.includePaths = toPatterns(options.includePaths);
+        this.excludePaths = toPatterns(options.excludePaths);
+        this.includeTypes = new HashSet<>(options.includeTypes);
+        this.excludeTypes = new HashSet<>(options.excludeTypes);
+        this.includeClasses = toTypePrefixes(options.includeClasses);
+        this.excludeClasses = toTypePrefixes(options.excludeClasses);
+    }
+
+    public boolean isEmpty() {
+        return !hasFileFilter() && !hasClassFilter();
+    }
+    public boolean hasFileFilter() {
+        return !includePaths.isEmpty() || !excludePaths.isEmpty()
+                || !includeTypes.isEmpty() || !excludeTypes.isEmpty();
+    }
+    public boolean hasClassFilter() {
+        return !includeClasses.isEmpty() || !excludeClasses.isEmpty();
+    }
+    /**
+     * @param type resource type name of the entries referencing the file e.g. layout, drawable
+     * */
+    public boolean acceptResFile(String path, String type) {
+        if (!includeTypes.isEmpty() && !includeTypes.contains(type)) {
+            return false;
+        }
+        if (excludeTypes.contains(type)) {
+            return false;
+        }
+        return acceptPath(path);
+    }
+    public boolean acceptPath(String path) {
+        if (!includePaths.isEmpty() && !matches(includePaths, path)) {
+            return false;
+        }
+        return !matches(excludePaths, path);
+    }
+    public boolean acceptDexFile(String path) {
+        return !matches(excludePaths, path);
+    }
+    /**
+     * @param typeName class type descriptor e.g. Lcom/vendor/sdk/Api;
+     * */
+    public boolean acceptClass(String typeName) {
+        if (!includeClasses.isEmpty() && !startsWith(includeClasses, typeName)) {
+            return false;
+        }
+        return !startsWith(excludeClasses, typeName);
+    }
+
+    private static boolean matches(List<Pattern> patterns, String path) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(path).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    private static boolean startsWith(List<String> prefixes, String typeName) {
+        for (String prefix : prefixes) {
+            if (typeName.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    private static List<Pattern> toPatterns(List<String> globs) {
+        List<Pattern> results = new ArrayList<>(globs.size());
+        for (String glob : globs) {
+            results.add(compileGlob(glob));
+        }
+        return results;
+    }
+    private static List<String> toTypePrefixes(List<String> prefixes) {
+        List<String> results = new ArrayList<>(prefixes.size());
+        for (String prefix : prefixes) {
+            results.add(toTypePrefix(prefix));
+        }
+        return results;
+    }
+    /**
+     * Converts com.vendor.sdk, com/vendor/sdk/ or Lcom/vendor/sdk/ to type descriptor prefix
+     * */
+    static String toTypePrefix(String prefix) {
+        if (prefix.startsWith("L") && prefix.indexOf('/') > 0) {
+            return prefix;
+        }
+        return "L" + prefix.replace('.', '/');
+    }
+    static Pattern compileGlob(String glob) {
+        if (glob.startsWith("/")) {
+            glob = glob.substring(1);
+        }
+        StringBuilder builder = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        int length = glob.length();
+        for (int i = 0; i < length; i++) {
+            char c = glob.charAt(i);
+            String regex;
+            if (c == '*') {
+                if (i + 1 < length && glob.charAt(i + 1) == '*') {
+                    i++;
+                    regex = ".*";
+                } else {
+                    regex = "[^/]*";
+                }
+            } else if (c == '?') {
+                regex = "[^/]";
+            } else {
+                literal.append(c);
+                continue;
+            }
+            if (literal.length() != 0) {
+                builder.append(Pattern.quote(literal.toString()));
+                literal.setLength(0);
+            }
+            builder.append(regex);
+        }
+        if (literal.length() != 0) {
+            builder.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(builder.toString());
+    }
+}
@@ -0,0 +1,511 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.decompile;
+
+import com.reandroid.apk.APKLogger;
+import com.reandroid.apk.ApkModule;
+import com.reandroid.apk.ApkUtil;
+import com.reandroid.apk.DexFileInputSource;
+import com.reandroid.apk.ResFile;
+import com.reandroid.apkeditor.Util;
+import com.reandroid.app.AndroidManifest;
+import com.reandroid.archive.InputSource;
+import com.reandroid.arsc.chunk.TableBlock;
+import com.reandroid.json.JSONObject;
+import com.reandroid.utils.io.FileUtil;
+import com.reandroid.utils.io.IOUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Decodes a new version of apk over an existing decode directory. The directory keeps
+ * crc of apk entries and of every generated file, on update unchanged dex files and
+ * unchanged root files are not decoded, the rest is decoded to a staging directory and
+ * merged file by file:
+ * <br/> - generated file not edited by user: replaced or deleted
+ * <br/> - edited file whose source did not change: kept
+ * <br/> - edited file whose source changed: kept, new file is written under .update/conflicts
+ * */
+class DecodeUpdate {
+
+    private final APKLogger logger;
+    private final DecompileOptions options;
+    private final File mainDirectory;
+    private final State previous;
+    private final State current;
+    private final Set<String> unchangedDexFiles;
+    private final Set<String> placeholderPaths;
+
+    DecodeUpdate(APKLogger logger, DecompileOptions options) throws IOException {
+        this.logger = logger;
+        this.options = options;
+        this.mainDirectory = options.outputFile;
+        this.previous = State.load(getStateFile(mainDirectory));
+        this.current = new State();
+        this.unchangedDexFiles = new HashSet<>();
+        this.placeholderPaths = new HashSet<>();
+    }
+
+    boolean isFullDecode() {
+        return previous == null;
+    }
+    File getDecodeDirectory() {
+        if (isFullDecode()) {
+            return mainDirectory;
+        }
+        return getStagingDirectory();
+    }
+    /**
+     * Dex files the dex decoder must skip
+     * */
+    Set<String> getUnchangedDexFiles() {
+        return unchangedDexFiles;
+    }
+    /**
+     * Records entries of apkModule and replaces unchanged root files with placeholders
+     * */
+    void prepare(ApkModule apkModule) throws IOException {
+        Map<String, Long> crcMap = readEntryCrcs(options.inputFile);
+        Set<String> resNames = new HashSet<>();
+        resNames.add(AndroidManifest.FILE_NAME);
+        resNames.add(TableBlock.FILE_NAME);
+        if (apkModule.hasTableBlock()) {
+            for (ResFile resFile : apkModule.listResFiles()) {
+                resNames.add(resFile.getFilePath());
+            }
+        }
+        Set<String> dexNames = new HashSet<>();
+        if (!options.dex) {
+            for (DexFileInputSource inputSource : apkModule.listDexFiles()) {
+                dexNames.add(inputSource.getAlias());
+            }
+        }
+        // resource name comments of smali are resolved through the table
+        boolean tableChanged = previous != null
+                && !isUnchanged(TableBlock.FILE_NAME, crcMap.get(TableBlock.FILE_NAME));
+        int changed = 0;
+        for (InputSource inputSource : apkModule.getInputSources()) {
+            String name = inputSource.getAlias();
+            Long crc = crcMap.get(name);
+            if (crc == null) {
+                continue;
+            }
+            String group;
+            if (dexNames.contains(name)) {
+                group = GROUP_DEX;
+            } else if (resNames.contains(name)) {
+                group = GROUP_RES;
+            } else {
+                group = GROUP_FILE;
+            }
+            Entry entry = new Entry(crc, group);
+            current.entries.put(name, entry);
+            Entry old = previous != null ? previous.entries.get(name) : null;
+            if (old == null || old.crc != crc) {
+                changed++;
+                continue;
+            }
+            if (GROUP_DEX.equals(group)) {
+                if (!tableChanged) {
+                    unchangedDexFiles.add(name);
+                }
+            } else if (GROUP_FILE.equals(group) && toRootPath(name).equals(old.path)) {
+                entry.path = old.path;
+                placeholderPaths.add(old.path);
+                Decompiler.replaceWithPlaceholder(apkModule, inputSource);
+            }
+        }
+        if (previous != null) {
+            logMessage("Changed entries: " + changed + ", unchanged dex: "
+                    + unchangedDexFiles.size() + ", unchanged files: " + placeholderPaths.size());
+            Util.deleteDir(getStagingDirectory());
+        }
+    }
+    private static String toRootPath(String name) {
+        return ApkUtil.ROOT_NAME + "/" + name;
+    }
+    private boolean isUnchanged(String name, Long crc) {
+        Entry old = previous.entries.get(name);
+        if (old == null || crc == null) {
+            return old == null && crc == null;
+        }
+        return old.crc == crc;
+    }
+    /**
+     * Merges staging directory and saves state, must be called after decoding
+     */
+    void finish() throws IOException {
+        if (isFullDecode()) {
+            for (String path : listFiles(mainDirectory)) {
+                current.outputs.put(path, Output.of(new File(mainDirectory, path)));
+            }
+        } else {
+            merge();
+        }
+        mapEntryOutputs();
+        current.save(getStateFile(mainDirectory));
+    }
+    private void merge() throws IOException {
+        File staging = getStagingDirectory();
+        Set<String> keptEditDex = new HashSet<>();
+        int replaced = 0;
+        int kept = 0;
+        int conflicts = 0;
+        Set<String> stagingPaths = new HashSet<>(listFiles(staging));
+        for (String path : stagingPaths) {
+            File stagingFile = new File(staging, path);
+            if (placeholderPaths.contains(path)) {
+                continue;
+            }
+            Output generated = Output.of(stagingFile);
+            generated.modified = -1;
+            Output recorded = previous.outputs.get(path);
+            File file = new File(mainDirectory, path);
+            current.outputs.put(path, generated);
+            if (!file.isFile()) {
+                if (recorded != null && recorded.sameContent(generated)) {
+                    // deleted by user, source not changed
+                    continue;
+                }
+                move(stagingFile, file);
+                current.outputs.put(path, Output.of(file));
+                replaced++;
+                continue;
+            }
+            if (recorded != null && recorded.matches(file)) {
+                if (!recorded.sameContent(generated)) {
+                    move(stagingFile, file);
+                    current.outputs.put(path, Output.of(file));
+                    replaced++;
+                } else {
+                    current.outputs.put(path, recorded);
+                }
+                continue;
+            }
+            if (generated.sameContent(Output.of(file))) {
+                current.outputs.put(path, Output.of(file));
+                continue;
+            }
+            addKeptEditDex(keptEditDex, path);
+            if (recorded != null && recorded.sameContent(generated)) {
+                kept++;
+            } else {
+                move(stagingFile, new File(getConflictsDirectory(), path));
+                conflicts++;
+            }
+        }
+        int deleted = 0;
+        for (Map.Entry<String, Output> entry : previous.outputs.entrySet()) {
+            String path = entry.getKey();
+            if (stagingPaths.contains(path) || current.outputs.containsKey(path)) {
+                continue;
+            }
+            if (placeholderPaths.contains(path) || isUnchangedDexOutput(path)) {
+                current.outputs.put(path, entry.getValue());
+                continue;
+            }
+            File file = new File(mainDirectory, path);
+            if (!file.isFile()) {
+                continue;
+            }
+            if (entry.getValue().matches(file)) {
+                file.delete();
+                deleted++;
+            } else {
+                addKeptEditDex(keptEditDex, path);
+                kept++;
+            }
+        }
+        for (String dexDir : keptEditDex) {
+            // the cached dex does not contain user edits
+            for (String name : new String[]{dexDir + ".dex", dexDir + ".dex.ref"}) {
+                File cache = new File(mainDirectory, CACHE_DIR + "/" + name);
+                if (cache.delete()) {
+                    current.outputs.remove(CACHE_DIR + "/" + name);
+                }
+            }
+        }
+        Util.deleteDir(staging);
+        deleteEmptyDirectories(mainDirectory);
+        logMessage("Updated: " + replaced + ", deleted: " + deleted
+                + ", kept edits: " + kept + ", conflicts: " + conflicts);
+        if (conflicts != 0) {
+            logMessage("Conflicting files saved to: " + getConflictsDirectory());
+        }
+    }
+    private boolean isUnchangedDexOutput(String path) {
+        String dexDir = getDexDirectoryName(path);
+        return dexDir != null && unchangedDexFiles.contains(dexDir + ".dex");
+    }
+    private void addKeptEditDex(Set<String> keptEditDex, String path) {
+        if (path.startsWith(SMALI_DIR + "/")) {
+            String dexDir = getDexDirectoryName(path);
+            if (dexDir != null) {
+                keptEditDex.add(dexDir);
+            }
+        }
+    }
+    /**
+     * Records generated file of each root file, the decoder writes them to root/ under
+     * their entry name
+     * */
+    private void mapEntryOutputs() {
+        for (Map.Entry<String, Entry> mapEntry : current.entries.entrySet()) {
+            Entry entry = mapEntry.getValue();
+            if (!GROUP_FILE.equals(entry.group) || entry.path != null) {
+                continue;
+            }
+            String path = toRootPath(mapEntry.getKey());
+            if (current.outputs.containsKey(path)) {
+                entry.path = path;
+            }
+        }
+    }
+    private File getStagingDirectory() {
+        return new File(new File(mainDirectory, UPDATE_DIR), "staging");
+    }
+    private File getConflictsDirectory() {
+        return new File(new File(mainDirectory, UPDATE_DIR), "conflicts");
+    }
+    private void logMessage(String msg) {
+        logger.logMessage(msg);
+    }
+
+    static File getStateFile(File mainDirectory) {
+        return new File(new File(mainDirectory, UPDATE_DIR), "state.json");
+    }
+    /**
+     * @return smali directory name (e.g. classes2) of smali or dex cache path, otherwise null
+     * */
+    private static String getDexDirectoryName(String path) {
+        if (path.startsWith(SMALI_DIR + "/")) {
+            int i = path.indexOf('/', SMALI_DIR.length() + 1);
+            if (i > 0) {
+                return path.substring(SMALI_DIR.length() + 1, i);
+            }
+        } else if (path.startsWith(CACHE_DIR + "/")
+                && path.indexOf('/', CACHE_DIR.length() + 1) < 0) {
+            if (path.endsWith(".dex")) {
+                return path.substring(CACHE_DIR.length() + 1, path.length() - 4);
+            }
+            if (path.endsWith(".dex.ref")) {
+                return path.substring(CACHE_DIR.length() + 1, path.length() - 8);
+            }
+        }
+        return null;
+    }
+    private static Map<String, Long> readEntryCrcs(File apkFile) throws IOException {
+        Map<String, Long> results = new HashMap<>();
+        try (ZipFile zipFile = new ZipFile(apkFile)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry zipEntry = entries.nextElement();
+                if (!zipEntry.isDirectory()) {
+                    results.put(zipEntry.getName(), zipEntry.getCrc());
+                }
+            }
+        }
+        return results;
+    }
+    private static void move(File source, File destination) throws IOException {
+        FileUtil.ensureParentDirectory(destination);
+        Files.move(source.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    private static List<String> listFiles(File dir) {
+        List<String> results = new ArrayList<>();
+        addFiles(dir, "", results);
+        return results;
+    }
+    private static void addFiles(File dir, String prefix, List<String> results) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String path = prefix + file.getName();
+            if (file.isDirectory()) {
+                if (!path.equals(UPDATE_DIR)) {
+                    addFiles(file, path + "/", results);
+                }
+            } else {
+                results.add(path);
+            }
+        }
+    }
+    private static void deleteEmptyDirectories(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                deleteEmptyDirectories(file);
+                String[] names = file.list();
+                if (names != null && names.length == 0) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    static class State {
+        final Map<String, Entry> entries = new TreeMap<>();
+        final Map<String, Output> outputs = new TreeMap<>();
+
+        void save(File file) throws IOException {
+            JSONObject entriesJson = new JSONObject();
+            for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                JSONObject jsonObject = new JSONObject();
+                jsonObject.put(NAME_crc, Long.toHexString(entry.crc));
+                jsonObject.put(NAME_group, entry.group);
+                if (entry.path != null) {
+                    jsonObject.put(NAME_path, entry.path);
+                }
+                entriesJson.put(mapEntry.getKey(), jsonObject);
+            }
+            JSONObject outputsJson = new JSONObject();
+            for (Map.Entry<String, Output> mapEntry : outputs.entrySet()) {
+                outputsJson.put(mapEntry.getKey(), mapEntry.getValue().toString());
+            }
+            JSONObject jsonObject = new JSONObject();
+            jsonObject.put(NAME_version, VERSION);
+            jsonObject.put(NAME_entries, entriesJson);
+            jsonObject.put(NAME_outputs, outputsJson);
+            FileUtil.ensureParentDirectory(file);
+            Files.write(file.toPath(), jsonObject.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        /**
+         * Returns null if the file does not exist, is not written by this version or is
+         * malformed, the caller decodes in full
+         * */
+        static State load(File file) throws IOException {
+            if (!file.isFile()) {
+                return null;
+            }
+            String text = IOUtil.readUtf8(FileUtil.inputStream(file));
+            try {
+                return parse(new JSONObject(text));
+            } catch (RuntimeException ignored) {
+                return null;
+            }
+        }
+        private static State parse(JSONObject jsonObject) {
+            if (jsonObject.optInt(NAME_version) != VERSION) {
+                return null;
+            }
+            State state = new State();
+            JSONObject entriesJson = jsonObject.getJSONObject(NAME_entries);
+            for (String name : entriesJson.keySet()) {
+                JSONObject entryJson = entriesJson.getJSONObject(name);
+                Entry entry = new Entry(Long.parseLong(entryJson.getString(NAME_crc), 16),
+                        entryJson.getString(NAME_group));
+                entry.path = entryJson.optString(NAME_path, null);
+                state.entries.put(name, entry);
+            }
+            JSONObject outputsJson = jsonObject.getJSONObject(NAME_outputs);
+            for (String path : outputsJson.keySet()) {
+                state.outputs.put(path, Output.parse(outputsJson.getString(path)));
+            }
+            return state;
+        }
+    }
+    static class Entry {
+        final long crc;
+        final String group;
+        String path;
+
+        Entry(long crc, String group) {
+            this.crc = crc;
+            this.group = group;
+        }
+    }
+    static class Output {
+        final long crc;
+        final long size;
+        long modified;
+
+        Output(long crc, long size, long modified) {
+            this.crc = crc;
+            this.size = size;
+            this.modified = modified;
+        }
+        boolean sameContent(Output output) {
+            return crc == output.crc && size == output.size;
+        }
+        /**
+         * Compares by size and modified time first, reads the file only if they differ
+         * */
+        boolean matches(File file) throws IOException {
+            if (file.length() != size) {
+                return false;
+            }
+            if (modified != -1 && file.lastModified() == modified) {
+                return true;
+            }
+            return crc == computeCrc(file);
+        }
+        @Override
+        public String toString() {
+            return Long.toHexString(crc) + ":" + size + ":" + modified;
+        }
+        static Output parse(String text) {
+            String[] values = text.split(":");
+            return new Output(Long.parseLong(values[0], 16),
+                    Long.parseLong(values[1]), Long.parseLong(values[2]));
+        }
+        static Output of(File file) throws IOException {
+            return new Output(computeCrc(file), file.length(), file.lastModified());
+        }
+        private static long computeCrc(File file) throws IOException {
+            CRC32 crc32 = new CRC32();
+            byte[] buffer = new byte[8192];
+            try (InputStream inputStream = new FileInputStream(file)) {
+                int read;
+                while ((read = inputStream.read(buffer)) > 0) {
+                    crc32.update(buffer, 0, read);
+                }
+            }
+            return crc32.getValue();
+        }
+    }
+
+    static final String UPDATE_DIR = ".update";
+    private static final String SMALI_DIR = "smali";
+    private static final String CACHE_DIR = ".cache";
+
+    static final String GROUP_DEX = "dex";
+    static final String GROUP_RES = "res";
+    static final String GROUP_FILE = "file";
+
+    private static final String NAME_version = "version";
+    private static final String NAME_entries = "entries";
+    private static final String NAME_outputs = "outputs";
+    private static final String NAME_crc = "crc";
+    private static final String NAME_group = "group";
+    private static final String NAME_path = "path";
+    private static final int VERSION = 1;
+}
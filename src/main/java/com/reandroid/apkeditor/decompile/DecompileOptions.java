@@ -19,6 +19,7 @@ import com.reandroid.apkeditor.OptionsWithFramework;
 import com.reandroid.jcommand.annotations.ChoiceArg;
 import com.reandroid.jcommand.annotations.CommandOptions;
 import com.reandroid.jcommand.annotations.OptionArg;
+import com.reandroid.jcommand.exceptions.CommandException;
 import com.reandroid.utils.StringsUtil;
 
 import java.io.File;
@@ -35,7 +36,8 @@ import java.util.List;
                 "decode_example_2",
                 "decode_example_3",
                 "decode_example_4",
-                "decode_example_5"
+                "decode_example_5",
+                "decode_example_6"
         },
         notes = {
                 "decode_note_1",
@@ -72,14 +74,29 @@ public class DecompileOptions extends OptionsWithFramework {
     @OptionArg(name = "-no-cache", description = "decode_no_cache", flag = true)
     public boolean noCache;
 
+    @OptionArg(name = "-dex-cache-ref", flag = true, description = "decode_dex_cache_ref")
+    public boolean dexCacheRef;
+
     @OptionArg(name = "-no-dex-debug", flag = true, description = "no_dex_debug")
     public boolean noDexDebug;
 
     @OptionArg(name = "-dex-markers", flag = true, description = "dump_dex_markers")
     public boolean dexMarkers;
 
+    @OptionArg(name = "-dex-stream", flag = true, description = "decode_dex_stream")
+    public boolean dexStream;
+
+    @OptionArg(name = "-global-cache", description = "decode_global_cache")
+    public File globalCache;
+
+    @OptionArg(name = "-global-cache-link", flag = true, description = "decode_global_cache_link")
+    public boolean globalCacheLink;
+
     @OptionArg(name = "-load-dex", description = "decode_load_dex")
-    public int loadDex = 3;
+    public int loadDex = 0;
+
+    @OptionArg(name = "-dex-heap-budget", description = "decode_dex_heap_budget")
+    public int dexHeapBudget = 0;
 
     @ChoiceArg(name = "-dex-lib",
             values = {
@@ -114,6 +131,29 @@ public class DecompileOptions extends OptionsWithFramework {
     @OptionArg(name = "-remove-annotation", description = "remove_annotation")
     public final List<String> removeAnnotations = new ArrayList<>();
 
+    @OptionArg(name = "-include", description = "decode_include")
+    public final List<String> includePaths = new ArrayList<>();
+
+    @OptionArg(name = "-exclude", description = "decode_exclude")
+    public final List<String> excludePaths = new ArrayList<>();
+
+    @OptionArg(name = "-include-type", description = "decode_include_type")
+    public final List<String> includeTypes = new ArrayList<>();
+
+    @OptionArg(name = "-exclude-type", description = "decode_exclude_type")
+    public final List<String> excludeTypes = new ArrayList<>();
+
+    @OptionArg(name = "-include-class", description = "decode_include_class")
+    public final List<String> includeClasses = new ArrayList<>();
+
+    @OptionArg(name = "-exclude-class", description = "decode_exclude_class")
+    public final List<String> excludeClasses = new ArrayList<>();
+
+    @OptionArg(name = "-update", flag = true, description = "decode_update")
+    public boolean update;
+
+    private DecodeFilter decodeFilter;
+
     public DecompileOptions() {
     }
 
@@ -122,14 +162,50 @@ public class DecompileOptions extends OptionsWithFramework {
         return new Decompiler(this);
     }
 
+    @Override
+    public void validateValues() {
+        super.validateValues();
+        if (getDecodeFilter().hasFileFilter() && (validateResDir || resDirName != null)) {
+            throw new CommandException("decode_filter_res_dir");
+        }
+        if (update && !getDecodeFilter().isEmpty()) {
+            throw new CommandException("decode_update_filter");
+        }
+    }
     @Override
     public void validateInput(boolean isFile, boolean isDirectory) {
         super.validateInput(true, false);
     }
     @Override
     public void validateOutput(boolean isFile) {
+        if (update) {
+            validateUpdateOutput();
+            return;
+        }
         super.validateOutput(false);
     }
+    private void validateUpdateOutput() {
+        File file = this.outputFile;
+        if (file == null) {
+            file = generateOutputFromInput(this.inputFile);
+            this.outputFile = file;
+        }
+        if (file.isFile()) {
+            throw new CommandException("path_is_file_expect_directory", file);
+        }
+        String[] names = file.list();
+        if (names != null && names.length != 0 && !DecodeUpdate.getStateFile(file).isFile()) {
+            throw new CommandException("decode_update_no_state", file);
+        }
+    }
+    public DecodeFilter getDecodeFilter() {
+        DecodeFilter decodeFilter = this.decodeFilter;
+        if (decodeFilter == null) {
+            decodeFilter = new DecodeFilter(this);
+            this.decodeFilter = decodeFilter;
+        }
+        return decodeFilter;
+    }
     public boolean containsCommentLevel(String level) {
         String commentLevel = this.commentLevel;
         if (StringsUtil.isEmpty(level)) {
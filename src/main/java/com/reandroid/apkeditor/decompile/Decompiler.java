@@ -16,25 +16,41 @@
 package com.reandroid.apkeditor.decompile;
 
 import com.reandroid.apk.*;
+import com.reandroid.app.AndroidManifest;
 import com.reandroid.apkeditor.CommandExecutor;
 import com.reandroid.apkeditor.Util;
 import com.reandroid.apkeditor.smali.SmaliDecompiler;
+import com.reandroid.apkeditor.utils.PassthroughFiles;
 import com.reandroid.archive.ArchiveFile;
+import com.reandroid.archive.ByteInputSource;
+import com.reandroid.archive.InputSource;
+import com.reandroid.archive.ZipEntryMap;
 import com.reandroid.archive.block.ApkSignatureBlock;
 import com.reandroid.arsc.chunk.TableBlock;
 import com.reandroid.arsc.coder.xml.XmlCoder;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 public class Decompiler extends CommandExecutor<DecompileOptions> {
+    private DecodeUpdate decodeUpdate;
+
     public Decompiler(DecompileOptions options){
         super(options, "[DECOMPILE] ");
     }
     @Override
     public void runCommand() throws IOException {
         DecompileOptions options = getOptions();
-        delete(options.outputFile);
+        if(options.update){
+            decodeUpdate = new DecodeUpdate(this, options);
+        }else {
+            delete(options.outputFile);
+        }
         logMessage("Loading ...");
         ApkModule apkModule=ApkModule.loadApkFile(this,
                 options.inputFile, options.getFrameworks());
@@ -57,12 +73,86 @@ public class Decompiler extends CommandExecutor<DecompileOptions> {
             logMessage("Validating resources dir ...");
             apkModule.validateResourcesDir();
         }
+        PassthroughFiles passthroughFiles = null;
+        if(options.getDecodeFilter().hasFileFilter()){
+            passthroughFiles = applyDecodeFilter(apkModule);
+        }
+        File decodeDir = options.outputFile;
+        if(decodeUpdate != null){
+            decodeUpdate.prepare(apkModule);
+            decodeDir = decodeUpdate.getDecodeDirectory();
+        }
         logMessage("Decompiling to " + options.type + " ...");
 
         ApkModuleDecoder decoder = getApkModuleDecoder(apkModule);
-        decoder.decode(options.outputFile);
+        decoder.decode(decodeDir);
+        if(passthroughFiles != null){
+            passthroughFiles.save(options.outputFile);
+        }
+        if(decodeUpdate != null){
+            decodeUpdate.finish();
+        }
         logMessage("Saved to: "+options.outputFile);
     }
+    /**
+     * Removes files rejected by filter from apkModule, res files are replaced by placeholders
+     * to keep their table entries. All are saved as stored to .passthrough on decode.
+     * */
+    private PassthroughFiles applyDecodeFilter(ApkModule apkModule) throws IOException {
+        DecompileOptions options = getOptions();
+        DecodeFilter filter = options.getDecodeFilter();
+        if(!options.keepResPath){
+            logMessage("Keeping original res paths for passthrough files");
+            options.keepResPath = true;
+        }
+        List<String> names = new ArrayList<>();
+        Set<String> resPaths = new HashSet<>();
+        if(apkModule.hasTableBlock()){
+            for(ResFile resFile : apkModule.listResFiles()){
+                String path = resFile.getFilePath();
+                resPaths.add(path);
+                if(!filter.acceptResFile(path, resFile.pickOne().getTypeName())){
+                    names.add(path);
+                    replaceWithPlaceholder(apkModule, resFile.getInputSource());
+                }
+            }
+        }
+        Set<String> dexNames = new HashSet<>();
+        for(DexFileInputSource inputSource : apkModule.listDexFiles()){
+            dexNames.add(inputSource.getAlias());
+        }
+        ZipEntryMap zipEntryMap = apkModule.getZipEntryMap();
+        for(InputSource inputSource : apkModule.getInputSources()){
+            String name = inputSource.getAlias();
+            if(resPaths.contains(name) || AndroidManifest.FILE_NAME.equals(name)
+                    || TableBlock.FILE_NAME.equals(name)){
+                continue;
+            }
+            boolean accept;
+            if(dexNames.contains(name)){
+                accept = filter.acceptDexFile(name);
+            }else {
+                accept = filter.acceptPath(name);
+            }
+            if(!accept){
+                names.add(name);
+                zipEntryMap.remove(name);
+            }
+        }
+        logMessage("Passthrough files: " + names.size());
+        return PassthroughFiles.create(options.inputFile, names);
+    }
+    static void replaceWithPlaceholder(ApkModule apkModule, InputSource inputSource){
+        byte[] bytes;
+        if(inputSource.getAlias().endsWith(".xml")){
+            bytes = PLACEHOLDER_XML;
+        }else {
+            bytes = new byte[0];
+        }
+        ByteInputSource placeholder = new ByteInputSource(bytes, inputSource.getAlias());
+        placeholder.copyAttributes(inputSource);
+        apkModule.add(placeholder);
+    }
     private ApkModuleDecoder getApkModuleDecoder(ApkModule apkModule) throws IOException {
         DecompileOptions options = getOptions();
         ApkModuleDecoder decoder;
@@ -90,6 +180,9 @@ public class Decompiler extends CommandExecutor<DecompileOptions> {
         TableBlock tableBlock = getTableBlockForDexComment(apkModule);
         SmaliDecompiler smaliDecompiler = new SmaliDecompiler(tableBlock, getOptions());
         smaliDecompiler.setApkLogger(this);
+        if (decodeUpdate != null) {
+            smaliDecompiler.setSkippedDexFiles(decodeUpdate.getUnchangedDexFiles());
+        }
         return smaliDecompiler;
     }
     private TableBlock getTableBlockForDexComment(ApkModule apkModule) throws IOException {
@@ -163,4 +256,8 @@ public class Decompiler extends CommandExecutor<DecompileOptions> {
         apkSignatureBlock.writeSplitRawToDirectory(options.signaturesDirectory);
         logMessage("Signatures dumped to: " + options.signaturesDirectory);
     }
+
+    private static final byte[] PLACEHOLDER_XML = ("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+            + "<!-- Passthrough file, restored from source apk on build -->\n"
+            + "<passthrough />\n").getBytes(StandardCharsets.UTF_8);
 }
@@ -0,0 +1,248 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.diff;
+
+import com.reandroid.apkeditor.CommandExecutor;
+import com.reandroid.apkeditor.info.InfoWriter;
+import com.reandroid.apkeditor.smali.DexClassHasher;
+import com.reandroid.apkeditor.utils.WorkerPool;
+import com.reandroid.arsc.chunk.TableBlock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.function.Function;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Compares two apk files. Entries are compared by crc and size of zip central
+ * directory, resources.arsc and dex files are decoded only when their crc differs.
+ * */
+public class Diff extends CommandExecutor<DiffOptions> {
+
+    public Diff(DiffOptions options) {
+        super(options, "[DIFF] ");
+        super.setEnableLog(options.outputFile != null);
+    }
+
+    @Override
+    public void runCommand() throws IOException {
+        DiffOptions options = getOptions();
+        delete(options.outputFile);
+        logMessage("Comparing: " + options.inputFile + " -> " + options.inputFile2);
+        InfoWriter infoWriter = InfoWriter.create(options.type, options.outputFile);
+        try (ZipFile oldZip = new ZipFile(options.inputFile);
+             ZipFile newZip = new ZipFile(options.inputFile2)) {
+            infoWriter.writeNameValue("old", options.inputFile.getAbsolutePath());
+            infoWriter.writeNameValue("new", options.inputFile2.getAbsolutePath());
+            Map<String, ZipEntry> oldEntries = mapEntries(oldZip);
+            Map<String, ZipEntry> newEntries = mapEntries(newZip);
+            compareFiles(infoWriter, oldEntries, newEntries);
+            if (!options.skipResources) {
+                compareResources(infoWriter, oldZip, newZip, oldEntries, newEntries);
+            }
+            if (!options.skipDex) {
+                compareDex(infoWriter, oldZip, newZip, oldEntries, newEntries);
+            }
+            infoWriter.flush();
+        } finally {
+            infoWriter.close();
+        }
+        if (options.outputFile != null) {
+            logMessage("Saved to: " + options.outputFile);
+        }
+    }
+
+    private void compareFiles(InfoWriter infoWriter, Map<String, ZipEntry> oldEntries,
+                              Map<String, ZipEntry> newEntries) throws IOException {
+        List<String> added = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, ZipEntry> entry : oldEntries.entrySet()) {
+            ZipEntry newEntry = newEntries.get(entry.getKey());
+            if (newEntry == null) {
+                removed.add(entry.getKey());
+            } else if (!isSame(entry.getValue(), newEntry)) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String name : newEntries.keySet()) {
+            if (!oldEntries.containsKey(name)) {
+                added.add(name);
+            }
+        }
+        writeSorted(infoWriter, "added-files", added);
+        writeSorted(infoWriter, "removed-files", removed);
+        writeSorted(infoWriter, "changed-files", changed);
+    }
+    private void compareResources(InfoWriter infoWriter, ZipFile oldZip, ZipFile newZip,
+                                  Map<String, ZipEntry> oldEntries,
+                                  Map<String, ZipEntry> newEntries) throws IOException {
+        ZipEntry oldTable = oldEntries.get(TableBlock.FILE_NAME);
+        ZipEntry newTable = newEntries.get(TableBlock.FILE_NAME);
+        if (oldTable == null || newTable == null || isSame(oldTable, newTable)) {
+            return;
+        }
+        logMessage("Comparing resources ...");
+        List<ZipEntrySource> sources = new ArrayList<>();
+        sources.add(new ZipEntrySource(oldZip, oldTable));
+        sources.add(new ZipEntrySource(newZip, newTable));
+        List<TableFingerprint> fingerprints = new WorkerPool().map(sources, Diff::loadFingerprint);
+        TableFingerprint oldFingerprint = fingerprints.get(0);
+        TableFingerprint newFingerprint = fingerprints.get(1);
+        compareHashes(infoWriter, "resources", oldFingerprint.getHashes(), newFingerprint.getHashes(),
+                oldFingerprint::getLabel, newFingerprint::getLabel);
+    }
+    private void compareDex(InfoWriter infoWriter, ZipFile oldZip, ZipFile newZip,
+                            Map<String, ZipEntry> oldEntries,
+                            Map<String, ZipEntry> newEntries) throws IOException {
+        List<ZipEntrySource> sources = new ArrayList<>();
+        addChangedDex(sources, oldZip, oldEntries, newEntries);
+        int oldCount = sources.size();
+        addChangedDex(sources, newZip, newEntries, oldEntries);
+        if (sources.isEmpty()) {
+            return;
+        }
+        logMessage("Comparing classes of " + sources.size() + " dex files ...");
+        List<Map<String, String>> results = new WorkerPool().map(sources, Diff::hashClasses);
+        Map<String, String> oldHashes = new HashMap<>();
+        Map<String, String> newHashes = new HashMap<>();
+        for (int i = 0; i < results.size(); i++) {
+            if (i < oldCount) {
+                oldHashes.putAll(results.get(i));
+            } else {
+                newHashes.putAll(results.get(i));
+            }
+        }
+        compareHashes(infoWriter, "classes", oldHashes, newHashes,
+                Function.identity(), Function.identity());
+    }
+    /**
+     * Dex files having identical copy on the other side contain the same classes, only
+     * the rest need to be hashed
+     * */
+    private static void addChangedDex(List<ZipEntrySource> results, ZipFile zipFile,
+                                      Map<String, ZipEntry> entries, Map<String, ZipEntry> otherEntries) {
+        List<ZipEntrySource> changed = new ArrayList<>();
+        for (Map.Entry<String, ZipEntry> entry : entries.entrySet()) {
+            String name = entry.getKey();
+            if (!isDexFile(name)) {
+                continue;
+            }
+            ZipEntry other = otherEntries.get(name);
+            if (other == null || !isSame(entry.getValue(), other)) {
+                changed.add(new ZipEntrySource(zipFile, entry.getValue()));
+            }
+        }
+        changed.sort(Comparator.comparing(source -> source.zipEntry.getName()));
+        results.addAll(changed);
+    }
+    /**
+     * @param oldLabels display name of a key on old side
+     * @param newLabels display name of a key on new side, a changed key whose labels differ
+     *                  (e.g. renamed resource) is shown as old -> new
+     * */
+    private static <T> void compareHashes(InfoWriter infoWriter, String name,
+                                          Map<String, T> oldHashes,
+                                          Map<String, T> newHashes,
+                                          Function<String, String> oldLabels,
+                                          Function<String, String> newLabels) throws IOException {
+        List<String> added = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, T> entry : oldHashes.entrySet()) {
+            String key = entry.getKey();
+            T hash = newHashes.get(key);
+            if (hash == null) {
+                removed.add(oldLabels.apply(key));
+            } else if (!hash.equals(entry.getValue())) {
+                String oldLabel = oldLabels.apply(key);
+                String newLabel = newLabels.apply(key);
+                if (oldLabel.equals(newLabel)) {
+                    changed.add(newLabel);
+                } else {
+                    changed.add(oldLabel + " -> " + newLabel);
+                }
+            }
+        }
+        for (String key : newHashes.keySet()) {
+            if (!oldHashes.containsKey(key)) {
+                added.add(newLabels.apply(key));
+            }
+        }
+        writeSorted(infoWriter, "added-" + name, added);
+        writeSorted(infoWriter, "removed-" + name, removed);
+        writeSorted(infoWriter, "changed-" + name, changed);
+    }
+    private static void writeSorted(InfoWriter infoWriter, String name, List<String> values) throws IOException {
+        values.sort(null);
+        infoWriter.writeArray(name, values.toArray(new String[0]));
+    }
+
+    private static TableFingerprint loadFingerprint(ZipEntrySource source) throws IOException {
+        try (InputStream inputStream = source.openStream()) {
+            return TableFingerprint.of(TableBlock.load(inputStream));
+        }
+    }
+    private static Map<String, String> hashClasses(ZipEntrySource source) throws IOException {
+        return new DexClassHasher().hashClasses(source.readBytes());
+    }
+    private static Map<String, ZipEntry> mapEntries(ZipFile zipFile) {
+        Map<String, ZipEntry> results = new HashMap<>();
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry zipEntry = entries.nextElement();
+            if (!zipEntry.isDirectory()) {
+                results.put(zipEntry.getName(), zipEntry);
+            }
+        }
+        return results;
+    }
+    private static boolean isSame(ZipEntry zipEntry1, ZipEntry zipEntry2) {
+        return zipEntry1.getCrc() == zipEntry2.getCrc()
+                && zipEntry1.getSize() == zipEntry2.getSize();
+    }
+    private static boolean isDexFile(String name) {
+        return name.indexOf('/') < 0 && name.startsWith("classes") && name.endsWith(".dex");
+    }
+
+    private static class ZipEntrySource {
+        final ZipFile zipFile;
+        final ZipEntry zipEntry;
+
+        ZipEntrySource(ZipFile zipFile, ZipEntry zipEntry) {
+            this.zipFile = zipFile;
+            this.zipEntry = zipEntry;
+        }
+        InputStream openStream() throws IOException {
+            return zipFile.getInputStream(zipEntry);
+        }
+        byte[] readBytes() throws IOException {
+            try (InputStream inputStream = openStream()) {
+                long size = zipEntry.getSize();
+                byte[] bytes = new byte[(int) Math.max(0, size)];
+                int offset = 0;
+                int read;
+                while (offset < bytes.length
+                        && (read = inputStream.read(bytes, offset, bytes.length - offset)) > 0) {
+                    offset += read;
+                }
+                return bytes;
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.diff;
+
+import com.reandroid.apkeditor.Options;
+import com.reandroid.jcommand.annotations.ChoiceArg;
+import com.reandroid.jcommand.annotations.CommandOptions;
+import com.reandroid.jcommand.annotations.OptionArg;
+import com.reandroid.jcommand.exceptions.CommandException;
+
+import java.io.File;
+
+@CommandOptions(
+        name = "diff",
+        description = "diff_description",
+        examples = {
+                "diff_example_1",
+                "diff_example_2"
+        })
+public class DiffOptions extends Options {
+
+    @OptionArg(name = "-i2", description = "diff_input_2")
+    public File inputFile2;
+
+    @ChoiceArg(name = "-t", description = "info_print_types", values = {TYPE_TEXT, TYPE_JSON, TYPE_XML})
+    public String type = TYPE_TEXT;
+
+    @OptionArg(name = "-skip-resources", description = "diff_skip_resources", flag = true)
+    public boolean skipResources = false;
+
+    @OptionArg(name = "-skip-dex", description = "diff_skip_dex", flag = true)
+    public boolean skipDex = false;
+
+    public DiffOptions() {
+        super();
+    }
+
+    @Override
+    public Diff newCommandExecutor() {
+        return new Diff(this);
+    }
+
+    @Override
+    public void validateValues() {
+        super.validateValues();
+        File file = this.inputFile2;
+        if (file == null) {
+            throw new CommandException("diff_missing_input_2");
+        }
+        validateInputFile(file, true, false);
+    }
+
+    @Override
+    public void validateInput(boolean isFile, boolean isDirectory) {
+        super.validateInput(true, false);
+    }
+
+    @Override
+    public void validateOutput(boolean isFile) {
+        super.validateOutput(true);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.diff;
+
+import com.reandroid.apkeditor.info.InfoWriter;
+import com.reandroid.arsc.chunk.PackageBlock;
+import com.reandroid.arsc.chunk.TableBlock;
+import com.reandroid.arsc.model.ResourceEntry;
+import com.reandroid.arsc.value.Entry;
+import com.reandroid.arsc.value.ResTableMapEntry;
+import com.reandroid.arsc.value.ResValueMap;
+import com.reandroid.arsc.value.Value;
+import com.reandroid.utils.HexUtil;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Hash of decoded value for each resource id and configuration. Values are hashed
+ * on their decoded form, so string pool order or table layout changes are not
+ * reported as changed resources. Keys are id and qualifiers, type and name are part
+ * of the hash, a renamed resource is reported as changed instead of removed and added.
+ * */
+class TableFingerprint {
+    private final Map<String, Long> hashes;
+    private final Map<String, String> names;
+
+    private TableFingerprint(Map<String, Long> hashes, Map<String, String> names) {
+        this.hashes = hashes;
+        this.names = names;
+    }
+
+    Map<String, Long> getHashes() {
+        return hashes;
+    }
+    /**
+     * @return key of getHashes() with type/name inserted after id
+     * */
+    String getLabel(String key) {
+        String id = key.substring(0, ID_LENGTH);
+        return id + " " + names.get(id) + key.substring(ID_LENGTH);
+    }
+
+    static TableFingerprint of(TableBlock tableBlock) {
+        Map<String, Long> hashes = new HashMap<>();
+        Map<String, String> names = new HashMap<>();
+        for (PackageBlock packageBlock : tableBlock.listPackages()) {
+            Iterator<ResourceEntry> iterator = packageBlock.getResources();
+            while (iterator.hasNext()) {
+                ResourceEntry resourceEntry = iterator.next();
+                if (resourceEntry.isEmpty()) {
+                    continue;
+                }
+                String id = HexUtil.toHex8("0x", resourceEntry.getResourceId());
+                String name = resourceEntry.getType() + "/" + resourceEntry.getName();
+                names.put(id, name);
+                for (Entry entry : resourceEntry) {
+                    if (entry == null) {
+                        continue;
+                    }
+                    String qualifiers = entry.getResConfig().getQualifiers();
+                    hashes.put(id + qualifiers, hashEntry(hash(FNV_OFFSET, name), entry));
+                }
+            }
+        }
+        return new TableFingerprint(hashes, names);
+    }
+    private static long hashEntry(long hash, Entry entry) {
+        if (!entry.isComplex()) {
+            return hashValue(hash, entry.getResValue());
+        }
+        hash = hash(hash, HexUtil.toHex8(((ResTableMapEntry) entry.getTableEntry()).getParentId()));
+        for (ResValueMap resValueMap : entry.getResValueMapArray().getChildes()) {
+            hash = hash(hash, HexUtil.toHex8(resValueMap.getNameId()));
+            hash = hashValue(hash, resValueMap);
+        }
+        return hash;
+    }
+    private static long hashValue(long hash, Value value) {
+        if (value == null) {
+            return hash;
+        }
+        hash = hash(hash, value.getValueType().name());
+        return hash(hash, InfoWriter.getValueAsString(value));
+    }
+    private static long hash(long hash, String text) {
+        if (text == null) {
+            text = "";
+        }
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            hash ^= text.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        hash ^= 0xffff;
+        hash *= FNV_PRIME;
+        return hash;
+    }
+
+    private static final int ID_LENGTH = 10;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+}
@@ -0,0 +1,366 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.info;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Adler32;
+
+/**
+ * Dex statistics taken from header and map_list only. Apart from markers,
+ * which are located by binary search at the tail of sorted string ids,
+ * no string, type or class data is parsed.
+ * <br/>
+ * A header summary reads only the first 0x70 bytes: counts, sizes and the stored checksum.
+ * Sections, markers and checksum verification need the whole dex.
+ * */
+public class DexSummary {
+    private final String name;
+    private final int version;
+    private final long checksum;
+    private final boolean checksumVerified;
+    private final boolean checksumValid;
+    private final int fileSize;
+    private final int stringCount;
+    private final int typeCount;
+    private final int protoCount;
+    private final int fieldCount;
+    private final int methodCount;
+    private final int classCount;
+    private final int dataSize;
+    private final List<Section> sections;
+    private final List<String> markers;
+
+    private DexSummary(String name, byte[] bytes, boolean full) throws IOException {
+        if (bytes.length < HEADER_SIZE || bytes[0] != 'd' || bytes[1] != 'e'
+                || bytes[2] != 'x' || bytes[3] != '\n') {
+            throw new IOException("Invalid dex file: " + name);
+        }
+        if (readInt(bytes, 0x28) != ENDIAN_CONSTANT) {
+            throw new IOException("Unsupported dex endian tag: " + name);
+        }
+        this.name = name;
+        this.version = (bytes[4] - '0') * 100 + (bytes[5] - '0') * 10 + (bytes[6] - '0');
+        this.checksum = readInt(bytes, 0x08) & 0xffffffffL;
+        this.fileSize = readInt(bytes, 0x20);
+        this.stringCount = readInt(bytes, 0x38);
+        this.typeCount = readInt(bytes, 0x40);
+        this.protoCount = readInt(bytes, 0x48);
+        this.fieldCount = readInt(bytes, 0x50);
+        this.methodCount = readInt(bytes, 0x58);
+        this.classCount = readInt(bytes, 0x60);
+        this.dataSize = readInt(bytes, 0x68);
+        this.checksumVerified = full;
+        if (!full) {
+            this.checksumValid = false;
+            this.sections = Collections.emptyList();
+            this.markers = Collections.emptyList();
+            return;
+        }
+        int end = Math.min(fileSize, bytes.length);
+        Adler32 adler32 = new Adler32();
+        if (end > 12) {
+            adler32.update(bytes, 12, end - 12);
+        }
+        this.checksumValid = adler32.getValue() == checksum;
+        this.sections = readSections(bytes, readInt(bytes, 0x34), end);
+        this.markers = readMarkers(bytes, stringCount, readInt(bytes, 0x3C));
+    }
+
+    public String getName() {
+        return name;
+    }
+    public int getVersion() {
+        return version;
+    }
+    public long getChecksum() {
+        return checksum;
+    }
+    /**
+     * True if checksum was verified against the content, i.e. read in full
+     * */
+    public boolean isChecksumVerified() {
+        return checksumVerified;
+    }
+    /**
+     * @return false if not verified
+     * */
+    public boolean isChecksumValid() {
+        return checksumValid;
+    }
+    public int getFileSize() {
+        return fileSize;
+    }
+    public int getStringCount() {
+        return stringCount;
+    }
+    public int getTypeCount() {
+        return typeCount;
+    }
+    public int getProtoCount() {
+        return protoCount;
+    }
+    public int getFieldCount() {
+        return fieldCount;
+    }
+    public int getMethodCount() {
+        return methodCount;
+    }
+    public int getClassCount() {
+        return classCount;
+    }
+    public int getDataSize() {
+        return dataSize;
+    }
+    public List<Section> getSections() {
+        return sections;
+    }
+    public List<String> getMarkers() {
+        return markers;
+    }
+
+    @Override
+    public String toString() {
+        return name + ", version=" + version + ", classes=" + classCount;
+    }
+
+    /**
+     * Reads header only, the stream is closed
+     * */
+    public static DexSummary readHeader(String name, InputStream inputStream) throws IOException {
+        byte[] bytes = new byte[HEADER_SIZE];
+        int length = 0;
+        try {
+            int read;
+            while (length < HEADER_SIZE
+                    && (read = inputStream.read(bytes, length, HEADER_SIZE - length)) > 0) {
+                length += read;
+            }
+        } finally {
+            inputStream.close();
+        }
+        if (length < HEADER_SIZE) {
+            throw new IOException("Invalid dex file: " + name);
+        }
+        return new DexSummary(name, bytes, false);
+    }
+    public static DexSummary read(String name, InputStream inputStream) throws IOException {
+        return read(name, readAll(inputStream));
+    }
+    public static DexSummary read(String name, byte[] bytes) throws IOException {
+        return new DexSummary(name, bytes, true);
+    }
+
+    /**
+     * Decodes all entries of string_ids in index order
+     * */
+    public static String[] readStrings(byte[] bytes) throws IOException {
+        if (bytes.length < HEADER_SIZE) {
+            throw new IOException("Invalid dex file");
+        }
+        int count = readInt(bytes, 0x38);
+        int offset = readInt(bytes, 0x3C);
+        if (count < 0 || offset < 0 || offset + count * 4L > bytes.length) {
+            throw new IOException("Invalid dex string_ids");
+        }
+        String[] results = new String[count];
+        for (int i = 0; i < count; i++) {
+            results[i] = readString(bytes, readInt(bytes, offset + i * 4));
+        }
+        return results;
+    }
+
+    private static List<Section> readSections(byte[] bytes, int mapOffset, int end) {
+        if (mapOffset <= 0 || mapOffset + 4 > bytes.length) {
+            return Collections.emptyList();
+        }
+        int count = readInt(bytes, mapOffset);
+        List<Section> results = new ArrayList<>(count);
+        int position = mapOffset + 4;
+        for (int i = 0; i < count && position + 12 <= bytes.length; i++) {
+            int type = readShort(bytes, position);
+            int size = readInt(bytes, position + 4);
+            int offset = readInt(bytes, position + 8);
+            results.add(new Section(type, size, offset));
+            position += 12;
+        }
+        // map items are sorted by offset, each section spans up to the next one
+        int length = results.size();
+        for (int i = 0; i < length; i++) {
+            Section section = results.get(i);
+            int next = i + 1 < length ? results.get(i + 1).getOffset() : end;
+            section.byteSize = Math.max(0, next - section.getOffset());
+        }
+        return results;
+    }
+    private static List<String> readMarkers(byte[] bytes, int stringCount, int stringIdsOffset) {
+        if (stringCount <= 0 || stringIdsOffset <= 0
+                || stringIdsOffset + stringCount * 4L > bytes.length) {
+            return Collections.emptyList();
+        }
+        // string ids are sorted, markers are the strings starting with "~~"
+        int low = 0;
+        int high = stringCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            String str = readString(bytes, readInt(bytes, stringIdsOffset + middle * 4));
+            if (str.compareTo(MARKER_PREFIX) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        List<String> results = new ArrayList<>();
+        for (int i = low; i < stringCount; i++) {
+            String str = readString(bytes, readInt(bytes, stringIdsOffset + i * 4));
+            if (!str.startsWith(MARKER_PREFIX)) {
+                break;
+            }
+            if (str.indexOf('{') > 0 && str.endsWith("}")) {
+                results.add(str);
+            }
+        }
+        return results;
+    }
+    /**
+     * Decodes MUTF-8 string_data_item at the given offset
+     * */
+    static String readString(byte[] bytes, int offset) {
+        int position = offset;
+        int length = bytes.length;
+        if (position < 0 || position >= length) {
+            return "";
+        }
+        // skip uleb128 utf16_size
+        while (position < length && (bytes[position] & 0x80) != 0) {
+            position++;
+        }
+        position++;
+        StringBuilder builder = new StringBuilder();
+        while (position < length) {
+            int b = bytes[position] & 0xff;
+            if (b == 0) {
+                break;
+            }
+            if (b < 0x80) {
+                builder.append((char) b);
+                position += 1;
+            } else if ((b & 0xe0) == 0xc0 && position + 1 < length) {
+                builder.append((char) (((b & 0x1f) << 6) | (bytes[position + 1] & 0x3f)));
+                position += 2;
+            } else if ((b & 0xf0) == 0xe0 && position + 2 < length) {
+                builder.append((char) (((b & 0x0f) << 12)
+                        | ((bytes[position + 1] & 0x3f) << 6)
+                        | (bytes[position + 2] & 0x3f)));
+                position += 3;
+            } else {
+                builder.append('\uFFFD');
+                position += 1;
+            }
+        }
+        return builder.toString();
+    }
+    static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff)
+                | (bytes[offset + 1] & 0xff) << 8
+                | (bytes[offset + 2] & 0xff) << 16
+                | (bytes[offset + 3] & 0xff) << 24;
+    }
+    static int readShort(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+    }
+    static byte[] readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int length;
+        try {
+            while ((length = inputStream.read(buffer)) > 0) {
+                outputStream.write(buffer, 0, length);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return outputStream.toByteArray();
+    }
+
+    public static class Section {
+        private final int type;
+        private final int count;
+        private final int offset;
+        private int byteSize;
+
+        Section(int type, int count, int offset) {
+            this.type = type;
+            this.count = count;
+            this.offset = offset;
+        }
+        public int getType() {
+            return type;
+        }
+        public String getName() {
+            return getSectionName(type);
+        }
+        public int getCount() {
+            return count;
+        }
+        public int getOffset() {
+            return offset;
+        }
+        public int getByteSize() {
+            return byteSize;
+        }
+
+        @Override
+        public String toString() {
+            return getName() + ", count=" + count + ", offset=" + offset + ", size=" + byteSize;
+        }
+    }
+
+    static String getSectionName(int type) {
+        switch (type) {
+            case 0x0000: return "header_item";
+            case 0x0001: return "string_id_item";
+            case 0x0002: return "type_id_item";
+            case 0x0003: return "proto_id_item";
+            case 0x0004: return "field_id_item";
+            case 0x0005: return "method_id_item";
+            case 0x0006: return "class_def_item";
+            case 0x0007: return "call_site_id_item";
+            case 0x0008: return "method_handle_item";
+            case 0x1000: return "map_list";
+            case 0x1001: return "type_list";
+            case 0x1002: return "annotation_set_ref_list";
+            case 0x1003: return "annotation_set_item";
+            case 0x2000: return "class_data_item";
+            case 0x2001: return "code_item";
+            case 0x2002: return "string_data_item";
+            case 0x2003: return "debug_info_item";
+            case 0x2004: return "annotation_item";
+            case 0x2005: return "encoded_array_item";
+            case 0x2006: return "annotations_directory_item";
+            case 0xF000: return "hiddenapi_class_data_item";
+            default: return String.format("unknown_0x%04x", type);
+        }
+    }
+
+    private static final int HEADER_SIZE = 0x70;
+    private static final int ENDIAN_CONSTANT = 0x12345678;
+    private static final String MARKER_PREFIX = "~~";
+}
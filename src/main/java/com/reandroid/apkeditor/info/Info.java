@@ -16,9 +16,11 @@
 package com.reandroid.apkeditor.info;
 
 import com.reandroid.apk.ApkModule;
+import com.reandroid.apk.DexFileInputSource;
 import com.reandroid.apk.ResFile;
 import com.reandroid.apkeditor.CommandExecutor;
 import com.reandroid.apkeditor.Util;
+import com.reandroid.apkeditor.utils.WorkerPool;
 import com.reandroid.app.AndroidManifest;
 import com.reandroid.archive.InputSource;
 import com.reandroid.arsc.chunk.PackageBlock;
@@ -41,6 +43,8 @@ import com.reandroid.utils.collection.ComputeIterator;
 
 import java.io.*;
 import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 public class Info extends CommandExecutor<InfoOptions> {
     private InfoWriter mInfoWriter;
@@ -53,6 +57,10 @@ public class Info extends CommandExecutor<InfoOptions> {
         InfoOptions options = getOptions();
         setEnableLog(options.outputFile != null);
         delete(options.outputFile);
+        if(options.query != null){
+            runQuery(InfoQuery.compile(options.query));
+            return;
+        }
         logMessage("Loading: " + options.inputFile);
         ApkModule apkModule = ApkModule.loadApkFile(this, options.inputFile,
                 options.getFrameworks());
@@ -73,6 +81,27 @@ public class Info extends CommandExecutor<InfoOptions> {
             logMessage("Saved to: " + out);
         }
     }
+    private void runQuery(InfoQuery query) throws IOException {
+        InfoOptions options = getOptions();
+        ApkModule apkModule = null;
+        if(query.requiresApkModule()){
+            logMessage("Loading: " + options.inputFile);
+            apkModule = ApkModule.loadApkFile(this, options.inputFile,
+                    options.getFrameworks());
+            String msg = Util.isProtected(apkModule);
+            if(msg != null){
+                logWarn(msg);
+                return;
+            }
+            apkModule.setAPKLogger(this);
+        }
+        query.write(new InfoQuery.Context(options.inputFile, apkModule), getInfoWriter());
+        flush();
+        close();
+        if(options.outputFile != null){
+            logMessage("Saved to: " + options.outputFile);
+        }
+    }
     private void print(ApkModule apkModule) throws IOException {
         printSourceFile();
 
@@ -94,6 +123,8 @@ public class Info extends CommandExecutor<InfoOptions> {
 
         printResources(apkModule);
         printDex(apkModule);
+        printDexSummary(apkModule);
+        printSize();
         printSignatures(apkModule);
 
         printXmlTree(apkModule);
@@ -145,6 +176,72 @@ public class Info extends CommandExecutor<InfoOptions> {
 
         dexDirectory.close();
     }
+    private void printDexSummary(ApkModule apkModule) throws IOException {
+        InfoOptions options = getOptions();
+        if(!options.dexSummary){
+            return;
+        }
+        InfoWriter infoWriter = getInfoWriter();
+        List<DexFileInputSource> dexList = apkModule.listDexFiles();
+        if(!options.dexVerify){
+            for(DexFileInputSource inputSource : dexList){
+                infoWriter.writeDexSummary(DexSummary.readHeader(
+                        inputSource.getAlias(), inputSource.openStream()));
+            }
+            return;
+        }
+        // entries share the archive file, only checksum and map parsing run on workers
+        new WorkerPool().process(dexList.iterator(), inputSource -> {
+                    byte[] bytes;
+                    synchronized (apkModule){
+                        bytes = DexSummary.readAll(inputSource.openStream());
+                    }
+                    return DexSummary.read(inputSource.getAlias(), bytes);
+                },
+                (inputSource, dexSummary) -> {
+                    infoWriter.writeDexSummary(dexSummary);
+                    return true;
+                });
+    }
+    private void printSize() throws IOException {
+        InfoOptions options = getOptions();
+        if(!options.size){
+            return;
+        }
+        getInfoWriter().writeSizeReport(SizeReport.read(options.inputFile));
+    }
+    /**
+     * Root classes*.dex entries in load order (classes.dex, classes2.dex ...)
+     * */
+    static List<ZipEntry> listDexEntries(ZipFile zipFile){
+        List<ZipEntry> results = new ArrayList<>();
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()){
+            ZipEntry zipEntry = entries.nextElement();
+            if(getDexNumber(zipEntry.getName()) > 0){
+                results.add(zipEntry);
+            }
+        }
+        results.sort(Comparator.comparingInt(zipEntry -> getDexNumber(zipEntry.getName())));
+        return results;
+    }
+    private static int getDexNumber(String name){
+        if(!name.startsWith("classes") || !name.endsWith(".dex")){
+            return 0;
+        }
+        String number = name.substring(7, name.length() - 4);
+        if(number.length() == 0){
+            return 1;
+        }
+        try {
+            int i = Integer.parseInt(number);
+            if(i > 1 && number.charAt(0) != '0'){
+                return i;
+            }
+        }catch (NumberFormatException ignored){
+        }
+        return 0;
+    }
     private void printSignatures(ApkModule apkModule) throws IOException {
         InfoOptions options = getOptions();
         if(!options.signatures && !options.signatures_base64){
@@ -425,7 +522,24 @@ public class Info extends CommandExecutor<InfoOptions> {
         if (!options.configurations || !apkModule.hasTableBlock()) {
             return;
         }
-        Iterator<ResConfig> iterator = apkModule.getTableBlock().getResConfigs();
+        getInfoWriter().writeArray("configurations", listConfigurations(apkModule.getTableBlock()));
+    }
+    private void printLanguages(ApkModule apkModule) throws IOException {
+        InfoOptions options = getOptions();
+        if (!options.languages || !apkModule.hasTableBlock()) {
+            return;
+        }
+        getInfoWriter().writeArray("languages", listLanguages(apkModule.getTableBlock()));
+    }
+    private void printLocales(ApkModule apkModule) throws IOException {
+        InfoOptions options = getOptions();
+        if (!options.locales || !apkModule.hasTableBlock()) {
+            return;
+        }
+        getInfoWriter().writeArray("locales", listLocales(apkModule.getTableBlock()));
+    }
+    static String[] listConfigurations(TableBlock tableBlock) {
+        Iterator<ResConfig> iterator = tableBlock.getResConfigs();
         List<String> qualifiers = CollectionUtil.toUniqueList(
                 ComputeIterator.of(iterator, config -> {
                     String qualifier = config.getQualifiers();
@@ -437,27 +551,19 @@ public class Info extends CommandExecutor<InfoOptions> {
 
         qualifiers.sort(CompareUtil.getComparableComparator());
 
-        getInfoWriter().writeArray("configurations", qualifiers.toArray(new String[0]));
+        return qualifiers.toArray(new String[0]);
     }
-    private void printLanguages(ApkModule apkModule) throws IOException {
-        InfoOptions options = getOptions();
-        if (!options.languages || !apkModule.hasTableBlock()) {
-            return;
-        }
-        Iterator<ResConfig> iterator = apkModule.getTableBlock().getResConfigs();
+    static String[] listLanguages(TableBlock tableBlock) {
+        Iterator<ResConfig> iterator = tableBlock.getResConfigs();
         List<String> languages = CollectionUtil.toUniqueList(
                 ComputeIterator.of(iterator, ResConfig::getLanguage));
 
         languages.sort(CompareUtil.getComparableComparator());
 
-        getInfoWriter().writeArray("languages", languages.toArray(new String[0]));
+        return languages.toArray(new String[0]);
     }
-    private void printLocales(ApkModule apkModule) throws IOException {
-        InfoOptions options = getOptions();
-        if (!options.locales || !apkModule.hasTableBlock()) {
-            return;
-        }
-        Iterator<ResConfig> iterator = apkModule.getTableBlock().getResConfigs();
+    static String[] listLocales(TableBlock tableBlock) {
+        Iterator<ResConfig> iterator = tableBlock.getResConfigs();
         List<String> locales = CollectionUtil.toUniqueList(
                 ComputeIterator.of(iterator, ResConfig::getLocale));
 
@@ -465,9 +571,9 @@ public class Info extends CommandExecutor<InfoOptions> {
 
         locales.sort(CompareUtil.getComparableComparator());
 
-        getInfoWriter().writeArray("locales", locales.toArray(new String[0]));
+        return locales.toArray(new String[0]);
     }
-    private String getValueOfName(ResXmlElement element){
+    static String getValueOfName(ResXmlElement element){
         ResXmlAttribute attribute = element
                 .searchAttributeByResourceId(AndroidManifest.ID_name);
         if(attribute == null){
@@ -496,7 +602,7 @@ public class Info extends CommandExecutor<InfoOptions> {
         }
         infoWriter.writeEntries(varName, entryList);
     }
-    private String getValueAsString(Entry entry){
+    static String getValueAsString(Entry entry){
         ResValue resValue = entry.getResValue();
         if(resValue == null){
             return "";
@@ -516,30 +622,9 @@ public class Info extends CommandExecutor<InfoOptions> {
             return mInfoWriter;
         }
         InfoOptions options = getOptions();
-        Writer writer = createWriter();
-        InfoWriter infoWriter;
-        if(InfoOptions.TYPE_JSON.equals(options.type)){
-            infoWriter = new InfoWriterJson(writer);
-        }else if(InfoOptions.TYPE_XML.equals(options.type)){
-            infoWriter = new InfoWriterXml(writer);
-        }else {
-            infoWriter = new InfoWriterText(writer);
-        }
-        mInfoWriter = infoWriter;
+        mInfoWriter = InfoWriter.create(options.type, options.outputFile);
         return mInfoWriter;
     }
-    private Writer createWriter() throws IOException{
-        InfoOptions options = getOptions();
-        File file = options.outputFile;
-        if(file == null){
-            return new PrintWriter(System.out);
-        }
-        File dir = file.getParentFile();
-        if(dir != null && !dir.exists()){
-            dir.mkdirs();
-        }
-        return new OutputStreamWriter(new FileOutputStream(file));
-    }
     private void flush() throws IOException {
         InfoWriter writer = this.mInfoWriter;
         if(writer != null){
@@ -554,7 +639,7 @@ public class Info extends CommandExecutor<InfoOptions> {
         }
     }
 
-    private static List<Entry> sortEntries(Collection<Entry> entryCollection) {
+    static List<Entry> sortEntries(Collection<Entry> entryCollection) {
         ArrayList<Entry> results;
         if(entryCollection instanceof ArrayList){
             results = (ArrayList<Entry>) entryCollection;
@@ -86,6 +86,15 @@ public class InfoOptions extends OptionsWithFramework {
     @OptionArg(name = "-dex", description = "info_dex", flag = true)
     public boolean dex = false;
 
+    @OptionArg(name = "-dex-summary", description = "info_dex_summary", flag = true)
+    public boolean dexSummary = false;
+
+    @OptionArg(name = "-dex-verify", description = "info_dex_verify", flag = true)
+    public boolean dexVerify = false;
+
+    @OptionArg(name = "-size", description = "info_size", flag = true)
+    public boolean size = false;
+
     @OptionArg(name = "-signatures", description = "info_signatures", flag = true)
     public boolean signatures = false;
 
@@ -116,6 +125,9 @@ public class InfoOptions extends OptionsWithFramework {
     @OptionArg(name = "-locales", description = "info_locales", flag = true)
     public boolean locales = false;
 
+    @OptionArg(name = "-q", alternates = {"-fields"}, description = "info_query")
+    public String query;
+
     public InfoOptions(){
         super();
     }
@@ -128,6 +140,9 @@ public class InfoOptions extends OptionsWithFramework {
     @Override
     public void validateValues() {
         super.validateValues();
+        if (query != null) {
+            InfoQuery.compile(query);
+        }
         initializeDefaults();
     }
 
@@ -180,9 +195,10 @@ public class InfoOptions extends OptionsWithFramework {
     }
     private boolean isDefault() {
         boolean flagsChanged = activities || appClass || appIcon || appName || appRoundIcon ||
-                dex || minSdkVersion || packageName || permissions || targetSdkVersion ||
+                dex || dexSummary || size || minSdkVersion || packageName || permissions || targetSdkVersion ||
                 resources || signatures || signatures_base64 || versionCode || versionName ||
-                listFiles || listXmlFiles || configurations || languages || locales || strings;
+                listFiles || listXmlFiles || configurations || languages || locales || strings ||
+                query != null;
 
         return !flagsChanged && resList.isEmpty() && typeFilterList.isEmpty() &&
                 xmlTree.isEmpty() && xmlStrings.isEmpty();
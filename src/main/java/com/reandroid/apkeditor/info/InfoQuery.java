@@ -0,0 +1,391 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.info;
+
+import com.reandroid.apk.ApkModule;
+import com.reandroid.apkeditor.utils.WorkerPool;
+import com.reandroid.app.AndroidManifest;
+import com.reandroid.archive.InputSource;
+import com.reandroid.arsc.chunk.PackageBlock;
+import com.reandroid.arsc.chunk.TableBlock;
+import com.reandroid.arsc.chunk.xml.AndroidManifestBlock;
+import com.reandroid.arsc.chunk.xml.ResXmlAttribute;
+import com.reandroid.arsc.chunk.xml.ResXmlElement;
+import com.reandroid.arsc.value.Entry;
+import com.reandroid.arsc.value.ValueType;
+import com.reandroid.jcommand.exceptions.CommandException;
+import com.reandroid.utils.CompareUtil;
+import com.reandroid.utils.HexUtil;
+import com.reandroid.utils.collection.CollectionUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Comma separated list of fields compiled once into a plan. Each field declares the
+ * archive sources it reads, only those are loaded and each of them at most once, e.g.
+ * a query of dex fields alone never parses manifest or resource table.
+ * */
+class InfoQuery {
+
+    static final int SOURCE_MANIFEST = 1;
+    static final int SOURCE_TABLE = 1 << 1;
+    static final int SOURCE_FILES = 1 << 2;
+    static final int SOURCE_DEX = 1 << 3;
+
+    private static final int SOURCE_APK_MODULE = SOURCE_MANIFEST | SOURCE_TABLE | SOURCE_FILES;
+
+    private final List<Field> fields;
+    private final int sources;
+
+    private InfoQuery(List<Field> fields, int sources) {
+        this.fields = fields;
+        this.sources = sources;
+    }
+
+    boolean requires(int source) {
+        return (sources & source) != 0;
+    }
+    boolean requiresApkModule() {
+        return requires(SOURCE_APK_MODULE);
+    }
+    void write(Context context, InfoWriter infoWriter) throws IOException {
+        infoWriter.setOrdered(true);
+        for (Field field : fields) {
+            Object value = field.evaluator.evaluate(context);
+            if (value == null) {
+                continue;
+            }
+            if (value instanceof Object[]) {
+                infoWriter.writeArray(field.name, (Object[]) value);
+            } else {
+                infoWriter.writeNameValue(field.name, value);
+            }
+        }
+    }
+
+    static InfoQuery compile(String expression) {
+        List<Field> fields = new ArrayList<>();
+        int sources = 0;
+        for (String token : expression.split(",")) {
+            String name = token.trim();
+            if (name.length() == 0) {
+                continue;
+            }
+            Field field = FIELDS.get(name);
+            if (field == null) {
+                throw new CommandException("info_unknown_query_field", name,
+                        String.join(",", FIELDS.keySet()));
+            }
+            if (!fields.contains(field)) {
+                fields.add(field);
+                sources |= field.sources;
+            }
+        }
+        if (fields.isEmpty()) {
+            throw new CommandException("info_empty_query");
+        }
+        return new InfoQuery(fields, sources);
+    }
+
+    /**
+     * Computes shared intermediates on first use and keeps them for the remaining fields
+     * */
+    static class Context {
+        private final File inputFile;
+        private final ApkModule apkModule;
+        private AndroidManifestBlock manifest;
+        private boolean manifestLoaded;
+        private List<DexSummary> dexHeaders;
+        private List<DexSummary> dexSummaries;
+
+        Context(File inputFile, ApkModule apkModule) {
+            this.inputFile = inputFile;
+            this.apkModule = apkModule;
+        }
+
+        AndroidManifestBlock getManifest() {
+            if (!manifestLoaded) {
+                manifestLoaded = true;
+                if (apkModule != null) {
+                    manifest = apkModule.getAndroidManifest();
+                }
+            }
+            return manifest;
+        }
+        ResXmlElement getApplication() {
+            AndroidManifestBlock manifest = getManifest();
+            if (manifest == null) {
+                return null;
+            }
+            return manifest.getApplicationElement();
+        }
+        TableBlock getTableBlock() {
+            ApkModule apkModule = this.apkModule;
+            if (apkModule == null || !apkModule.hasTableBlock()) {
+                return null;
+            }
+            return apkModule.getTableBlock();
+        }
+        InputSource[] getInputSources() {
+            if (apkModule == null) {
+                return null;
+            }
+            return apkModule.getInputSources();
+        }
+        /**
+         * Summaries of dex headers only, enough for sizes and counts
+         * */
+        List<DexSummary> getDexHeaders() throws IOException {
+            if (dexSummaries != null) {
+                return dexSummaries;
+            }
+            if (dexHeaders != null) {
+                return dexHeaders;
+            }
+            List<DexSummary> results = new ArrayList<>();
+            try (ZipFile zipFile = new ZipFile(inputFile)) {
+                for (ZipEntry zipEntry : Info.listDexEntries(zipFile)) {
+                    results.add(DexSummary.readHeader(zipEntry.getName(), zipFile.getInputStream(zipEntry)));
+                }
+            }
+            dexHeaders = results;
+            return results;
+        }
+        /**
+         * Summaries of fully read dex files, needed for markers and checksum
+         * */
+        List<DexSummary> getDexSummaries() throws IOException {
+            if (dexSummaries != null) {
+                return dexSummaries;
+            }
+            try (ZipFile zipFile = new ZipFile(inputFile)) {
+                dexSummaries = new WorkerPool().map(Info.listDexEntries(zipFile),
+                        zipEntry -> DexSummary.read(zipEntry.getName(), zipFile.getInputStream(zipEntry)));
+            }
+            return dexSummaries;
+        }
+    }
+
+    private static Object getManifestValue(Context context, ManifestGetter getter) {
+        AndroidManifestBlock manifest = context.getManifest();
+        if (manifest == null) {
+            return null;
+        }
+        return getter.get(manifest);
+    }
+    private static Object getApplicationName(Context context) {
+        ResXmlElement application = context.getApplication();
+        if (application == null) {
+            return null;
+        }
+        return Info.getValueOfName(application);
+    }
+    private static Object getMainActivity(Context context) {
+        AndroidManifestBlock manifest = context.getManifest();
+        if (manifest == null) {
+            return null;
+        }
+        ResXmlElement main = manifest.getMainActivity();
+        if (main == null) {
+            return null;
+        }
+        return Info.getValueOfName(main);
+    }
+    private static Object getActivities(Context context) {
+        AndroidManifestBlock manifest = context.getManifest();
+        if (manifest == null) {
+            return null;
+        }
+        List<ResXmlElement> activityList = CollectionUtil.toList(manifest.getActivities(true));
+        String[] activityNames = new String[activityList.size()];
+        for (int i = 0; i < activityNames.length; i++) {
+            activityNames[i] = Info.getValueOfName(activityList.get(i));
+        }
+        return activityNames;
+    }
+    private static Object getPermissions(Context context) {
+        AndroidManifestBlock manifest = context.getManifest();
+        if (manifest == null) {
+            return null;
+        }
+        List<String> usesPermissions = manifest.getUsesPermissions();
+        usesPermissions.sort(CompareUtil.getComparableComparator());
+        return usesPermissions.toArray(new String[0]);
+    }
+    /**
+     * Resolves application attribute the same way as non-verbose info, the value of
+     * first entry sorted by configuration.
+     * */
+    private static Object getApplicationResource(Context context, int attributeId) {
+        ResXmlElement application = context.getApplication();
+        if (application == null) {
+            return null;
+        }
+        ResXmlAttribute attribute = application.searchAttributeByResourceId(attributeId);
+        if (attribute == null) {
+            return null;
+        }
+        if (attribute.getValueType() == ValueType.STRING) {
+            return attribute.getValueAsString();
+        }
+        int resourceId = attribute.getData();
+        TableBlock tableBlock = context.getTableBlock();
+        if (tableBlock == null) {
+            return HexUtil.toHex8("@0x", resourceId);
+        }
+        List<Entry> entryList = tableBlock.resolveReference(resourceId);
+        if (entryList.size() == 0) {
+            return null;
+        }
+        return Info.getValueAsString(Info.sortEntries(entryList).get(0));
+    }
+    private static Object getTableValue(Context context, TableGetter getter) {
+        TableBlock tableBlock = context.getTableBlock();
+        if (tableBlock == null) {
+            return null;
+        }
+        return getter.get(tableBlock);
+    }
+    private static Object getPackageNames(TableBlock tableBlock) {
+        List<String> names = new ArrayList<>();
+        for (PackageBlock packageBlock : tableBlock.listPackages()) {
+            names.add(packageBlock.getName());
+        }
+        return names.toArray(new String[0]);
+    }
+    private static Object getFiles(Context context) {
+        InputSource[] inputSources = context.getInputSources();
+        if (inputSources == null) {
+            return null;
+        }
+        String[] names = new String[inputSources.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = inputSources[i].getAlias();
+        }
+        return names;
+    }
+    private static Object getFilesCount(Context context) {
+        InputSource[] inputSources = context.getInputSources();
+        if (inputSources == null) {
+            return null;
+        }
+        return inputSources.length;
+    }
+    private static Object sumDex(Context context, DexCounter counter) throws IOException {
+        long total = 0;
+        for (DexSummary dexSummary : context.getDexHeaders()) {
+            total += counter.count(dexSummary);
+        }
+        return total;
+    }
+    private static Object getDexMarkers(Context context) throws IOException {
+        Set<String> markers = new LinkedHashSet<>();
+        for (DexSummary dexSummary : context.getDexSummaries()) {
+            markers.addAll(dexSummary.getMarkers());
+        }
+        return markers.toArray(new String[0]);
+    }
+    private static Object isDexChecksumValid(Context context) throws IOException {
+        for (DexSummary dexSummary : context.getDexSummaries()) {
+            if (!dexSummary.isChecksumValid()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final int ID_roundIcon = 0x0101052c;
+
+    private static final Map<String, Field> FIELDS = new LinkedHashMap<>();
+
+    private static void register(String name, int sources, Evaluator evaluator) {
+        FIELDS.put(name, new Field(name, sources, evaluator));
+    }
+
+    static {
+        register("package", SOURCE_MANIFEST,
+                context -> getManifestValue(context, AndroidManifestBlock::getPackageName));
+        register("versionCode", SOURCE_MANIFEST,
+                context -> getManifestValue(context, AndroidManifestBlock::getVersionCode));
+        register("versionName", SOURCE_MANIFEST,
+                context -> getManifestValue(context, AndroidManifestBlock::getVersionName));
+        register("minSdkVersion", SOURCE_MANIFEST,
+                context -> getManifestValue(context, AndroidManifestBlock::getMinSdkVersion));
+        register("targetSdkVersion", SOURCE_MANIFEST,
+                context -> getManifestValue(context, AndroidManifestBlock::getTargetSdkVersion));
+        register("appName", SOURCE_MANIFEST | SOURCE_TABLE,
+                context -> getApplicationResource(context, AndroidManifest.ID_label));
+        register("appIcon", SOURCE_MANIFEST | SOURCE_TABLE,
+                context -> getApplicationResource(context, AndroidManifest.ID_icon));
+        register("appRoundIcon", SOURCE_MANIFEST | SOURCE_TABLE,
+                context -> getApplicationResource(context, ID_roundIcon));
+        register("appClass", SOURCE_MANIFEST, InfoQuery::getApplicationName);
+        register("mainActivity", SOURCE_MANIFEST, InfoQuery::getMainActivity);
+        register("activities", SOURCE_MANIFEST, InfoQuery::getActivities);
+        register("permissions", SOURCE_MANIFEST, InfoQuery::getPermissions);
+
+        register("packages", SOURCE_TABLE,
+                context -> getTableValue(context, InfoQuery::getPackageNames));
+        register("configurations", SOURCE_TABLE,
+                context -> getTableValue(context, Info::listConfigurations));
+        register("languages", SOURCE_TABLE,
+                context -> getTableValue(context, Info::listLanguages));
+        register("locales", SOURCE_TABLE,
+                context -> getTableValue(context, Info::listLocales));
+
+        register("files", SOURCE_FILES, InfoQuery::getFiles);
+        register("files.count", SOURCE_FILES, InfoQuery::getFilesCount);
+
+        register("dex.count", SOURCE_DEX, context -> context.getDexHeaders().size());
+        register("dex.size", SOURCE_DEX, context -> sumDex(context, DexSummary::getFileSize));
+        register("dex.classCount", SOURCE_DEX, context -> sumDex(context, DexSummary::getClassCount));
+        register("dex.methodCount", SOURCE_DEX, context -> sumDex(context, DexSummary::getMethodCount));
+        register("dex.fieldCount", SOURCE_DEX, context -> sumDex(context, DexSummary::getFieldCount));
+        register("dex.stringCount", SOURCE_DEX, context -> sumDex(context, DexSummary::getStringCount));
+        register("dex.typeCount", SOURCE_DEX, context -> sumDex(context, DexSummary::getTypeCount));
+        register("dex.protoCount", SOURCE_DEX, context -> sumDex(context, DexSummary::getProtoCount));
+        register("dex.markers", SOURCE_DEX, InfoQuery::getDexMarkers);
+        register("dex.checksumValid", SOURCE_DEX, InfoQuery::isDexChecksumValid);
+    }
+
+    private static class Field {
+        final String name;
+        final int sources;
+        final Evaluator evaluator;
+
+        Field(String name, int sources, Evaluator evaluator) {
+            this.name = name;
+            this.sources = sources;
+            this.evaluator = evaluator;
+        }
+    }
+    private interface Evaluator {
+        Object evaluate(Context context) throws IOException;
+    }
+    private interface ManifestGetter {
+        Object get(AndroidManifestBlock manifest);
+    }
+    private interface TableGetter {
+        Object get(TableBlock tableBlock);
+    }
+    private interface DexCounter {
+        int count(DexSummary dexSummary);
+    }
+}
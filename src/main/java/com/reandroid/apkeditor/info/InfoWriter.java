@@ -15,6 +15,7 @@
  */
 package com.reandroid.apkeditor.info;
 
+import com.reandroid.apkeditor.Options;
 import com.reandroid.archive.block.ApkSignatureBlock;
 import com.reandroid.archive.block.CertificateBlock;
 import com.reandroid.arsc.chunk.PackageBlock;
@@ -29,9 +30,7 @@ import com.reandroid.utils.HexUtil;
 import com.reandroid.arsc.value.*;
 import com.reandroid.utils.collection.CollectionUtil;
 
-import java.io.Closeable;
-import java.io.IOException;
-import java.io.Writer;
+import java.io.*;
 import java.util.*;
 
 public abstract class InfoWriter implements Closeable {
@@ -64,12 +63,19 @@ public abstract class InfoWriter implements Closeable {
     public abstract void writeXmlDocument(String sourcePath, ResXmlDocument xmlDocument) throws IOException;
     public abstract void writeCertificates(List<CertificateBlock> certificateList, boolean base64) throws IOException;
     public abstract void writeDexInfo(DexFile dexFile, boolean writeSectionInfo) throws IOException;
+    public abstract void writeDexSummary(DexSummary dexSummary) throws IOException;
+    public abstract void writeSizeReport(SizeReport sizeReport) throws IOException;
     public abstract void writeResources(ResourceEntry resourceEntry, boolean writeEntries) throws IOException;
     public abstract void writePackageNames(Collection<PackageBlock> packageBlocks) throws IOException;
     public abstract void writeEntries(String name, List<Entry> entryList) throws IOException;
     public abstract void writeArray(String name, Object[] values) throws IOException;
     public abstract void writeNameValue(String name, Object value) throws IOException;
     public abstract void flush() throws IOException;
+    /**
+     * Writes name values in call order instead of the writer's default layout
+     * */
+    void setOrdered(boolean ordered){
+    }
     boolean contains(SpecTypePair specTypePair, List<String> filterList){
         if(filterList.size() == 0){
             return true;
@@ -84,13 +90,37 @@ public abstract class InfoWriter implements Closeable {
         this.writer.close();
     }
 
+    /**
+     * Creates writer of the given type (text, json or xml) writing to file, or to
+     * standard output if file is null
+     * */
+    public static InfoWriter create(String type, File file) throws IOException {
+        Writer writer = createWriter(file);
+        if(Options.TYPE_JSON.equals(type)){
+            return new InfoWriterJson(writer);
+        }
+        if(Options.TYPE_XML.equals(type)){
+            return new InfoWriterXml(writer);
+        }
+        return new InfoWriterText(writer);
+    }
+    private static Writer createWriter(File file) throws IOException{
+        if(file == null){
+            return new PrintWriter(System.out);
+        }
+        File dir = file.getParentFile();
+        if(dir != null && !dir.exists()){
+            dir.mkdirs();
+        }
+        return new OutputStreamWriter(new FileOutputStream(file));
+    }
     static String toString(Object obj){
         if(obj != null){
             return obj.toString();
         }
         return null;
     }
-    static String getValueAsString(Value value){
+    public static String getValueAsString(Value value){
         ValueType valueType = value.getValueType();
         if(valueType == ValueType.STRING){
             return value.getValueAsString();
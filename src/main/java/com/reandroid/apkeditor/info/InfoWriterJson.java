@@ -20,6 +20,7 @@ import com.reandroid.arsc.array.ResValueMapArray;
 import com.reandroid.arsc.chunk.PackageBlock;
 import com.reandroid.arsc.chunk.xml.ResXmlDocument;
 import com.reandroid.arsc.container.SpecTypePair;
+import com.reandroid.arsc.item.StringItem;
 import com.reandroid.arsc.model.ResourceEntry;
 import com.reandroid.arsc.pool.StringPool;
 import com.reandroid.arsc.value.Entry;
@@ -30,6 +31,7 @@ import com.reandroid.dex.model.DexFile;
 import com.reandroid.dex.sections.Marker;
 import com.reandroid.json.JSONObject;
 import com.reandroid.json.JSONWriter;
+import com.reandroid.utils.HexUtil;
 import com.reandroid.utils.collection.CollectionUtil;
 
 import java.io.IOException;
@@ -41,6 +43,8 @@ import java.util.List;
 public class InfoWriterJson extends InfoWriter{
     private final JSONWriter mJsonWriter;
     private final JSONObject mJsonObject;
+    private boolean mOrdered;
+    private boolean mNameValueOpen;
 
     public InfoWriterJson(Writer writer) {
         super(writer);
@@ -51,29 +55,49 @@ public class InfoWriterJson extends InfoWriter{
         this.mJsonObject = jsonObject;
     }
 
+    /**
+     * Same schema as StringPool.toJson() under "strings", written item by item instead of
+     * building the whole array first.
+     * */
     @Override
     public void writeStringPool(String source, StringPool<?> stringPool) throws IOException {
-        JSONObject stringPoolObject = new JSONObject();
-        stringPoolObject.put("source", source);
-        stringPoolObject.put("count", stringPool.size());
-        stringPoolObject.put("styles", stringPool.countStyles());
-        stringPoolObject.put("sorted", stringPool.getHeaderBlock().isSorted());
-        stringPoolObject.put("utf8", stringPool.isUtf8());
-        stringPoolObject.put("bytes", stringPool.getHeaderBlock().getChunkSize());
-        stringPoolObject.put("strings", stringPool.toJson());
-        mJsonObject.put("string_pool", stringPoolObject);
+        JSONWriter jsonWriter = jsonWriter().object()
+                .key("string_pool").object()
+                .key("source").value(source)
+                .key("count").value(stringPool.size())
+                .key("styles").value(stringPool.countStyles())
+                .key("sorted").value(stringPool.getHeaderBlock().isSorted())
+                .key("utf8").value(stringPool.isUtf8())
+                .key("bytes").value(stringPool.getHeaderBlock().getChunkSize())
+                .key("strings").array();
+        int size = stringPool.size();
+        for (int i = 0; i < size; i++) {
+            StringItem item = stringPool.get(i);
+            if (item != null) {
+                jsonWriter.value(item.toJson());
+            }
+        }
+        jsonWriter.endArray()
+                .endObject()
+                .endObject();
+        getWriter().flush();
     }
+    /**
+     * Keeps the ResXmlDocument.toJson() schema. The json tree of one document is built,
+     * written and released before the next document is read.
+     * */
     @Override
     public void writeXmlDocument(String sourcePath, ResXmlDocument xmlDocument) throws IOException {
-        JSONWriter jsonWriter = mJsonWriter.object();
-        jsonWriter.key("source_path").value(sourcePath);
-        jsonWriter.key("document").value(xmlDocument.toJson());
-        jsonWriter.endObject();
+        jsonWriter().object()
+                .key("source_path").value(sourcePath)
+                .key("document").value(xmlDocument.toJson())
+                .endObject();
+        getWriter().flush();
     }
 
     @Override
     public void writeCertificates(List<CertificateBlock> certificateList, boolean base64) throws IOException {
-        JSONWriter jsonWriter = mJsonWriter.object()
+        JSONWriter jsonWriter = jsonWriter().object()
                 .key("certificates").array();
         for(CertificateBlock certificateBlock : certificateList){
             JSONObject jsonObject = certificateBlock.toJson();
@@ -87,7 +111,7 @@ public class InfoWriterJson extends InfoWriter{
 
     @Override
     public void writeDexInfo(DexFile dexFile, boolean writeSectionInfo) throws IOException {
-        JSONWriter jsonWriter = mJsonWriter.object()
+        JSONWriter jsonWriter = jsonWriter().object()
                 .key("name").value(dexFile.getFileName())
                 .key("version").value(dexFile.getVersion())
                 .key("markers").array();
@@ -98,9 +122,63 @@ public class InfoWriterJson extends InfoWriter{
         jsonWriter.endArray().endObject();
     }
     @Override
+    public void writeDexSummary(DexSummary dexSummary) throws IOException {
+        JSONWriter jsonWriter = jsonWriter().object()
+                .key("name").value(dexSummary.getName())
+                .key("version").value(dexSummary.getVersion())
+                .key("file_size").value(dexSummary.getFileSize())
+                .key("checksum").value(HexUtil.toHex8("0x", (int) dexSummary.getChecksum()));
+        if(dexSummary.isChecksumVerified()){
+            jsonWriter.key("checksum_valid").value(dexSummary.isChecksumValid());
+        }
+        jsonWriter.key("strings").value(dexSummary.getStringCount())
+                .key("types").value(dexSummary.getTypeCount())
+                .key("protos").value(dexSummary.getProtoCount())
+                .key("fields").value(dexSummary.getFieldCount())
+                .key("methods").value(dexSummary.getMethodCount())
+                .key("classes").value(dexSummary.getClassCount())
+                .key("data_size").value(dexSummary.getDataSize())
+                .key("markers").array();
+        for(String marker : dexSummary.getMarkers()){
+            jsonWriter.value(marker);
+        }
+        jsonWriter.endArray()
+                .key("sections").array();
+        for(DexSummary.Section section : dexSummary.getSections()){
+            jsonWriter.object()
+                    .key("name").value(section.getName())
+                    .key("count").value(section.getCount())
+                    .key("offset").value(section.getOffset())
+                    .key("size").value(section.getByteSize())
+                    .endObject();
+        }
+        jsonWriter.endArray().endObject();
+    }
+    @Override
+    public void writeSizeReport(SizeReport sizeReport) throws IOException {
+        SizeReport.Group total = sizeReport.getTotal();
+        JSONWriter jsonWriter = jsonWriter().object()
+                .key("files").value(total.getCount())
+                .key("size").value(total.getSize())
+                .key("compressed_size").value(total.getCompressedSize());
+        for(SizeReport.Category category : sizeReport.getCategories()){
+            jsonWriter.key(category.getName()).array();
+            for(SizeReport.Group group : category.getGroups()){
+                jsonWriter.object()
+                        .key("name").value(group.getName())
+                        .key("count").value(group.getCount())
+                        .key("size").value(group.getSize())
+                        .key("compressed_size").value(group.getCompressedSize())
+                        .endObject();
+            }
+            jsonWriter.endArray();
+        }
+        jsonWriter.endObject();
+    }
+    @Override
     public void writeResources(PackageBlock packageBlock, List<String> typeFilters, boolean writeEntries) throws IOException {
         packageBlock.sortTypes();
-        JSONWriter jsonWriter = mJsonWriter.object()
+        JSONWriter jsonWriter = jsonWriter().object()
                 .key("id").value(packageBlock.getId())
                 .key("package").value(packageBlock.getName())
                 .key("types").array();
@@ -115,7 +193,7 @@ public class InfoWriterJson extends InfoWriter{
                 .endObject();
     }
     public void writeResources(SpecTypePair specTypePair, boolean writeEntries) throws IOException {
-        JSONWriter jsonWriter = mJsonWriter.object()
+        JSONWriter jsonWriter = jsonWriter().object()
                 .key("id").value(specTypePair.getId())
                 .key("type").value(specTypePair.getTypeName())
                 .key("entries").array();
@@ -132,7 +210,7 @@ public class InfoWriterJson extends InfoWriter{
         if(resourceEntry.isEmpty()){
             return;
         }
-        JSONWriter jsonWriter = mJsonWriter.object()
+        JSONWriter jsonWriter = jsonWriter().object()
                 .key("id").value(resourceEntry.getResourceId())
                 .key("type").value(resourceEntry.getType())
                 .key("name").value(resourceEntry.getName());
@@ -144,7 +222,7 @@ public class InfoWriterJson extends InfoWriter{
     }
 
     public void writeEntries(ResourceEntry entryList) throws IOException {
-        JSONWriter jsonWriter = mJsonWriter.array();
+        JSONWriter jsonWriter = jsonWriter().array();
         for(Entry entry : entryList){
             writeEntry(entry);
         }
@@ -162,14 +240,14 @@ public class InfoWriterJson extends InfoWriter{
         if(resValue == null){
             return;
         }
-        mJsonWriter.object()
+        jsonWriter().object()
                 .key(NAME_QUALIFIERS).value(entry.getResConfig().getQualifiers())
                 .key("value").value(getValueAsString(resValue))
                 .endObject();
     }
     private void writeBagEntry(Entry entry) {
         ResValueMapArray mapArray = entry.getResValueMapArray();
-        JSONWriter jsonWriter = mJsonWriter.object()
+        JSONWriter jsonWriter = jsonWriter().object()
                 .key(NAME_QUALIFIERS).value(entry.getResConfig().getQualifiers())
                 .key("size").value(mapArray.size())
                 .key("parent").value(((ResTableMapEntry)entry.getTableEntry()).getParentId())
@@ -181,7 +259,7 @@ public class InfoWriterJson extends InfoWriter{
                 .endObject();
     }
     private void writeValueMap(ResValueMap resValueMap){
-        mJsonWriter.object()
+        jsonWriter().object()
                 .key("name").value(resValueMap.decodeName())
                 .key("id").value(resValueMap.getNameId())
                 .key("value").value(getValueAsString(resValueMap))
@@ -192,7 +270,7 @@ public class InfoWriterJson extends InfoWriter{
         if(packageBlocks == null || packageBlocks.size() == 0){
             return;
         }
-        JSONWriter jsonWriter = mJsonWriter.object()
+        JSONWriter jsonWriter = jsonWriter().object()
                 .key(TAG_RES_PACKAGES).array();
 
         for(PackageBlock packageBlock : packageBlocks){
@@ -210,7 +288,7 @@ public class InfoWriterJson extends InfoWriter{
             return;
         }
         Entry first = entryList.get(0);
-        JSONWriter jsonWriter = mJsonWriter.object()
+        JSONWriter jsonWriter = jsonWriter().object()
                 .key("id").value(first.getResourceId())
                 .key("type").value(first.getTypeName())
                 .key("name").value(first.getName())
@@ -226,7 +304,7 @@ public class InfoWriterJson extends InfoWriter{
     @Override
     public void writeArray(String name, Object[] values) throws IOException {
 
-        JSONWriter jsonWriter = mJsonWriter.object()
+        JSONWriter jsonWriter = jsonWriter().object()
                 .key(name)
                 .array();
 
@@ -239,18 +317,49 @@ public class InfoWriterJson extends InfoWriter{
     }
     @Override
     public void writeNameValue(String name, Object value) throws IOException {
-        mJsonObject.put(name, value);
+        if (!mOrdered) {
+            mJsonObject.put(name, value);
+            getWriter().flush();
+            return;
+        }
+        if (!mNameValueOpen) {
+            mJsonWriter.object();
+            mNameValueOpen = true;
+        }
+        mJsonWriter.key(name).value(value);
         getWriter().flush();
     }
 
     @Override
     public void flush() throws IOException {
         Writer writer = getWriter();
+        JSONWriter jsonWriter = jsonWriter();
         if (!mJsonObject.isEmpty()) {
-            mJsonWriter.value(mJsonObject);
+            jsonWriter.value(mJsonObject);
         }
-        mJsonWriter.endArray();
+        jsonWriter.endArray();
         writer.write("\n");
         writer.flush();
     }
+
+    /**
+     * By default name values are collected into one object written on flush. When
+     * ordered (query output), name values are written as they come and consecutive
+     * ones share an object, so output keeps the order of the calls.
+     * */
+    @Override
+    void setOrdered(boolean ordered) {
+        jsonWriter();
+        this.mOrdered = ordered;
+    }
+    /**
+     * Ends the object of ordered name values, if open, before any other write
+     * */
+    private JSONWriter jsonWriter() {
+        if (mNameValueOpen) {
+            mJsonWriter.endObject();
+            mNameValueOpen = false;
+        }
+        return mJsonWriter;
+    }
 }
@@ -219,6 +219,70 @@ public class InfoWriterText extends InfoWriter {
         }
         writer.flush();
     }
+    @Override
+    public void writeDexSummary(DexSummary dexSummary) throws IOException {
+        Writer writer = getWriter();
+        writer.write("\n");
+        writeNameValue("Name", dexSummary.getName());
+        writeNameValue("Version", dexSummary.getVersion());
+        writeNameValue("FileSize", dexSummary.getFileSize());
+        String checksum = HexUtil.toHex8((int) dexSummary.getChecksum());
+        if (dexSummary.isChecksumVerified() && !dexSummary.isChecksumValid()) {
+            checksum = checksum + " (invalid)";
+        }
+        writeNameValue("Checksum", checksum);
+        writeNameValue("Strings", dexSummary.getStringCount());
+        writeNameValue("Types", dexSummary.getTypeCount());
+        writeNameValue("Protos", dexSummary.getProtoCount());
+        writeNameValue("Fields", dexSummary.getFieldCount());
+        writeNameValue("Methods", dexSummary.getMethodCount());
+        writeNameValue("Classes", dexSummary.getClassCount());
+        writeNameValue("DataSize", dexSummary.getDataSize());
+        List<String> markers = dexSummary.getMarkers();
+        if (markers.size() != 0) {
+            writer.write("Markers:");
+            for (String marker : markers) {
+                writer.write("\n");
+                writer.write(ARRAY_TAB);
+                writer.write(marker);
+            }
+            writer.write("\n");
+        }
+        List<DexSummary.Section> sections = dexSummary.getSections();
+        if (sections.size() != 0) {
+            writer.write("Sections:");
+            for (DexSummary.Section section : sections) {
+                writer.write("\n");
+                writer.write(ARRAY_TAB);
+                writer.write(section.toString());
+            }
+            writer.write("\n");
+        }
+        writer.flush();
+    }
+    @Override
+    public void writeSizeReport(SizeReport sizeReport) throws IOException {
+        Writer writer = getWriter();
+        SizeReport.Group total = sizeReport.getTotal();
+        writeNameValue("Files", total.getCount());
+        writeNameValue("Size", total.getSize());
+        writeNameValue("CompressedSize", total.getCompressedSize());
+        for (SizeReport.Category category : sizeReport.getCategories()) {
+            List<SizeReport.Group> groups = category.getGroups();
+            if (groups.isEmpty()) {
+                continue;
+            }
+            writer.write(category.getName());
+            writer.write(":");
+            for (SizeReport.Group group : groups) {
+                writer.write("\n");
+                writer.write(ARRAY_TAB);
+                writer.write(group.toString());
+            }
+            writer.write("\n");
+        }
+        writer.flush();
+    }
     private void writeLayout(DexLayout layout) throws IOException {
         Writer writer = getWriter();
         if (layout.isMultiLayoutEntry()) {
@@ -83,6 +83,7 @@ public class InfoWriterXml extends InfoWriter{
         indent = indent - 2;
         writeIndent(serializer, indent);
         serializer.endTag(null, "string-pool");
+        mIndent = indent - 2;
         serializer.flush();
     }
     @Override
@@ -146,6 +147,79 @@ public class InfoWriterXml extends InfoWriter{
         indent = mIndent - 2;
         mIndent = indent;
     }
+    @Override
+    public void writeDexSummary(DexSummary dexSummary) throws IOException {
+        KXmlSerializer serializer = getSerializer();
+        int indent = mIndent + 2;
+        mIndent = indent;
+        writeIndent(serializer, indent);
+        serializer.startTag(null, "dex-summary");
+        serializer.attribute(null, "name", dexSummary.getName());
+        serializer.attribute(null, "version", Integer.toString(dexSummary.getVersion()));
+        serializer.attribute(null, "file-size", Integer.toString(dexSummary.getFileSize()));
+        serializer.attribute(null, "checksum", HexUtil.toHex8((int) dexSummary.getChecksum()));
+        if (dexSummary.isChecksumVerified()) {
+            serializer.attribute(null, "checksum-valid", String.valueOf(dexSummary.isChecksumValid()));
+        }
+        serializer.attribute(null, "strings", Integer.toString(dexSummary.getStringCount()));
+        serializer.attribute(null, "types", Integer.toString(dexSummary.getTypeCount()));
+        serializer.attribute(null, "protos", Integer.toString(dexSummary.getProtoCount()));
+        serializer.attribute(null, "fields", Integer.toString(dexSummary.getFieldCount()));
+        serializer.attribute(null, "methods", Integer.toString(dexSummary.getMethodCount()));
+        serializer.attribute(null, "classes", Integer.toString(dexSummary.getClassCount()));
+        serializer.attribute(null, "data-size", Integer.toString(dexSummary.getDataSize()));
+        for (String marker : dexSummary.getMarkers()) {
+            writeIndent(serializer, indent + 2);
+            serializer.startTag(null, "marker");
+            serializer.text(marker);
+            serializer.endTag(null, "marker");
+        }
+        for (DexSummary.Section section : dexSummary.getSections()) {
+            writeIndent(serializer, indent + 2);
+            serializer.startTag(null, "section");
+            serializer.attribute(null, "name", section.getName());
+            serializer.attribute(null, "count", Integer.toString(section.getCount()));
+            serializer.attribute(null, "offset", Integer.toString(section.getOffset()));
+            serializer.attribute(null, "size", Integer.toString(section.getByteSize()));
+            serializer.endTag(null, "section");
+        }
+        writeIndent(serializer, indent);
+        serializer.endTag(null, "dex-summary");
+        serializer.flush();
+        mIndent = indent - 2;
+    }
+    @Override
+    public void writeSizeReport(SizeReport sizeReport) throws IOException {
+        KXmlSerializer serializer = getSerializer();
+        int indent = mIndent + 2;
+        mIndent = indent;
+        SizeReport.Group total = sizeReport.getTotal();
+        writeIndent(serializer, indent);
+        serializer.startTag(null, "size-report");
+        serializer.attribute(null, "files", Integer.toString(total.getCount()));
+        serializer.attribute(null, "size", Long.toString(total.getSize()));
+        serializer.attribute(null, "compressed-size", Long.toString(total.getCompressedSize()));
+        for (SizeReport.Category category : sizeReport.getCategories()) {
+            writeIndent(serializer, indent + 2);
+            serializer.startTag(null, "category");
+            serializer.attribute(null, "name", category.getName());
+            for (SizeReport.Group group : category.getGroups()) {
+                writeIndent(serializer, indent + 4);
+                serializer.startTag(null, "group");
+                serializer.attribute(null, "name", group.getName());
+                serializer.attribute(null, "count", Integer.toString(group.getCount()));
+                serializer.attribute(null, "size", Long.toString(group.getSize()));
+                serializer.attribute(null, "compressed-size", Long.toString(group.getCompressedSize()));
+                serializer.endTag(null, "group");
+            }
+            writeIndent(serializer, indent + 2);
+            serializer.endTag(null, "category");
+        }
+        writeIndent(serializer, indent);
+        serializer.endTag(null, "size-report");
+        serializer.flush();
+        mIndent = indent - 2;
+    }
     private void writeDexLayout(KXmlSerializer serializer, DexLayout layout) throws IOException {
         int indent = mIndent + 2;
         mIndent = indent;
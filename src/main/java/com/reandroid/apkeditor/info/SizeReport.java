@@ -0,0 +1,379 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.info;
+
+import com.reandroid.apkeditor.utils.IntSet;
+import com.reandroid.apkeditor.utils.WorkerPool;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Apk size accounting. Entry sizes are taken from zip central directory, no entry is
+ * inflated except dex files which are parsed to attribute their class_data_item and
+ * code_item bytes to the package of owning class. Compressed size of a dex package is
+ * its share of the dex entry compressed size, proportional to its bytes. Count of a dex
+ * package is its number of class_defs, (shared) bytes have none.
+ * */
+public class SizeReport {
+    private final Group total;
+    private final List<Category> categories;
+
+    private SizeReport(Group total, List<Category> categories) {
+        this.total = total;
+        this.categories = categories;
+    }
+
+    public Group getTotal() {
+        return total;
+    }
+    public List<Category> getCategories() {
+        return categories;
+    }
+
+    public static SizeReport read(File apkFile) throws IOException {
+        Group total = new Group("total");
+        Category directories = new Category("directories");
+        Category resourceTypes = new Category("resource_types");
+        Category qualifiers = new Category("qualifiers");
+        Category abis = new Category("abis");
+        Category dexPackages = new Category("dex_packages");
+        try (ZipFile zipFile = new ZipFile(apkFile)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry zipEntry = entries.nextElement();
+                if (zipEntry.isDirectory()) {
+                    continue;
+                }
+                String name = zipEntry.getName();
+                long size = Math.max(0, zipEntry.getSize());
+                long compressed = Math.max(0, zipEntry.getCompressedSize());
+                total.add(size, compressed);
+                directories.add(getDirectory(name), size, compressed);
+                addResource(resourceTypes, qualifiers, name, size, compressed);
+                String abi = getAbi(name);
+                if (abi != null) {
+                    abis.add(abi, size, compressed);
+                }
+            }
+            new WorkerPool().process(Info.listDexEntries(zipFile).iterator(),
+                    zipEntry -> readDexPackages(zipFile, zipEntry),
+                    (zipEntry, packageSizes) -> {
+                        addDexPackages(dexPackages, zipEntry, packageSizes);
+                        return true;
+                    });
+        }
+        List<Category> categories = new ArrayList<>();
+        categories.add(directories.sort());
+        categories.add(resourceTypes.sort());
+        categories.add(qualifiers.sort());
+        categories.add(abis.sort());
+        categories.add(dexPackages.sort());
+        return new SizeReport(total, categories);
+    }
+
+    private static String getDirectory(String name) {
+        int i = name.lastIndexOf('/');
+        if (i < 0) {
+            return "/";
+        }
+        return name.substring(0, i + 1);
+    }
+    /**
+     * Splits res/type-qualifiers/file paths, obfuscated flat paths carry no type
+     * */
+    private static void addResource(Category resourceTypes, Category qualifiers,
+                                    String name, long size, long compressed) {
+        if (!name.startsWith("res/")) {
+            return;
+        }
+        int end = name.indexOf('/', 4);
+        if (end < 0) {
+            return;
+        }
+        String dir = name.substring(4, end);
+        String type = dir;
+        String qualifier = "(default)";
+        int i = dir.indexOf('-');
+        if (i > 0) {
+            type = dir.substring(0, i);
+            qualifier = dir.substring(i + 1);
+        }
+        resourceTypes.add(type, size, compressed);
+        qualifiers.add(qualifier, size, compressed);
+    }
+    private static String getAbi(String name) {
+        if (!name.startsWith("lib/")) {
+            return null;
+        }
+        int end = name.indexOf('/', 4);
+        if (end < 0) {
+            return null;
+        }
+        return name.substring(4, end);
+    }
+    private static void addDexPackages(Category dexPackages, ZipEntry zipEntry, Map<String, long[]> packageSizes) {
+        long size = Math.max(1, zipEntry.getSize());
+        long compressed = Math.max(0, zipEntry.getCompressedSize());
+        for (Map.Entry<String, long[]> entry : packageSizes.entrySet()) {
+            long[] value = entry.getValue();
+            long bytes = value[0];
+            dexPackages.add(entry.getKey(), (int) value[1], bytes, bytes * compressed / size);
+        }
+    }
+
+    /**
+     * @return package name to {bytes, class count}
+     * */
+    private static Map<String, long[]> readDexPackages(ZipFile zipFile, ZipEntry zipEntry) throws IOException {
+        byte[] bytes = DexSummary.readAll(zipFile.getInputStream(zipEntry));
+        Map<String, long[]> results = new HashMap<>();
+        if (bytes.length < 0x70) {
+            return results;
+        }
+        int stringIdsOffset = DexSummary.readInt(bytes, 0x3C);
+        int typeIdsOffset = DexSummary.readInt(bytes, 0x44);
+        int classCount = DexSummary.readInt(bytes, 0x60);
+        int classDefsOffset = DexSummary.readInt(bytes, 0x64);
+        int length = bytes.length;
+        IntSet codeOffsets = new IntSet();
+        long owned = 0;
+        for (int i = 0; i < classCount; i++) {
+            int classDef = classDefsOffset + i * CLASS_DEF_SIZE;
+            if (classDef < 0 || classDef + CLASS_DEF_SIZE > length) {
+                break;
+            }
+            String packageName = getPackageName(bytes, stringIdsOffset, typeIdsOffset,
+                    DexSummary.readInt(bytes, classDef));
+            long[] value = results.get(packageName);
+            if (value == null) {
+                value = new long[2];
+                results.put(packageName, value);
+            }
+            value[1]++;
+            int classDataOffset = DexSummary.readInt(bytes, classDef + 24);
+            if (classDataOffset <= 0 || classDataOffset >= length) {
+                continue;
+            }
+            long classBytes = readClassData(bytes, classDataOffset, codeOffsets);
+            owned += classBytes;
+            value[0] += classBytes;
+        }
+        long shared = Math.min(length, Math.max(0, DexSummary.readInt(bytes, 0x20))) - owned;
+        if (shared > 0) {
+            results.put(SHARED_DEX_BYTES, new long[]{shared, 0});
+        }
+        return results;
+    }
+    /**
+     * @return byte size of class_data_item plus the code_items it references, code items
+     * shared with a previous class are not counted again
+     * */
+    private static long readClassData(byte[] bytes, int offset, IntSet codeOffsets) {
+        int[] position = new int[]{offset};
+        int staticFields = readUleb128(bytes, position);
+        int instanceFields = readUleb128(bytes, position);
+        int directMethods = readUleb128(bytes, position);
+        int virtualMethods = readUleb128(bytes, position);
+        int fields = staticFields + instanceFields;
+        for (int i = 0; i < fields && position[0] < bytes.length; i++) {
+            readUleb128(bytes, position);
+            readUleb128(bytes, position);
+        }
+        long codeBytes = 0;
+        int methods = directMethods + virtualMethods;
+        for (int i = 0; i < methods && position[0] < bytes.length; i++) {
+            readUleb128(bytes, position);
+            readUleb128(bytes, position);
+            int codeOffset = readUleb128(bytes, position);
+            if (codeOffset > 0 && codeOffsets.add(codeOffset)) {
+                codeBytes += getCodeItemSize(bytes, codeOffset);
+            }
+        }
+        return (position[0] - offset) + codeBytes;
+    }
+    private static int getCodeItemSize(byte[] bytes, int offset) {
+        int length = bytes.length;
+        if (offset + 16 > length) {
+            return 0;
+        }
+        int triesSize = DexSummary.readShort(bytes, offset + 6);
+        int insnsSize = DexSummary.readInt(bytes, offset + 12);
+        long end = offset + 16L + insnsSize * 2L;
+        if (triesSize != 0) {
+            if ((insnsSize & 1) != 0) {
+                end += 2;
+            }
+            end += triesSize * 8L;
+            if (end >= length) {
+                return length - offset;
+            }
+            int[] position = new int[]{(int) end};
+            int handlers = readUleb128(bytes, position);
+            for (int i = 0; i < handlers && position[0] < length; i++) {
+                int size = readSleb128(bytes, position);
+                int pairs = Math.abs(size);
+                for (int j = 0; j < pairs && position[0] < length; j++) {
+                    readUleb128(bytes, position);
+                    readUleb128(bytes, position);
+                }
+                if (size <= 0) {
+                    readUleb128(bytes, position);
+                }
+            }
+            end = position[0];
+        }
+        return (int) (Math.min(end, length) - offset);
+    }
+    private static String getPackageName(byte[] bytes, int stringIdsOffset, int typeIdsOffset, int typeIndex) {
+        int typeId = typeIdsOffset + typeIndex * 4;
+        if (typeIndex < 0 || typeId + 4 > bytes.length) {
+            return UNKNOWN_PACKAGE;
+        }
+        int stringId = stringIdsOffset + DexSummary.readInt(bytes, typeId) * 4;
+        if (stringId < 0 || stringId + 4 > bytes.length) {
+            return UNKNOWN_PACKAGE;
+        }
+        String descriptor = DexSummary.readString(bytes, DexSummary.readInt(bytes, stringId));
+        int i = descriptor.lastIndexOf('/');
+        if (!descriptor.startsWith("L") || i < 0) {
+            return DEFAULT_PACKAGE;
+        }
+        return descriptor.substring(1, i).replace('/', '.');
+    }
+    private static int readUleb128(byte[] bytes, int[] position) {
+        int result = 0;
+        int shift = 0;
+        int i = position[0];
+        int length = bytes.length;
+        while (i < length) {
+            int b = bytes[i++];
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0 || shift >= 28) {
+                break;
+            }
+            shift += 7;
+        }
+        position[0] = i;
+        return result;
+    }
+    private static int readSleb128(byte[] bytes, int[] position) {
+        int result = 0;
+        int shift = 0;
+        int b = 0;
+        int i = position[0];
+        int length = bytes.length;
+        while (i < length) {
+            b = bytes[i++];
+            result |= (b & 0x7f) << shift;
+            shift += 7;
+            if ((b & 0x80) == 0 || shift >= 35) {
+                break;
+            }
+        }
+        if (shift < 32 && (b & 0x40) != 0) {
+            result |= -1 << shift;
+        }
+        position[0] = i;
+        return result;
+    }
+
+    public static class Category {
+        private final String name;
+        private final Map<String, Group> groupMap;
+        private List<Group> groups;
+
+        Category(String name) {
+            this.name = name;
+            this.groupMap = new HashMap<>();
+        }
+        public String getName() {
+            return name;
+        }
+        /**
+         * Groups sorted by size, largest first
+         * */
+        public List<Group> getGroups() {
+            return groups;
+        }
+        void add(String groupName, long size, long compressed) {
+            add(groupName, 1, size, compressed);
+        }
+        void add(String groupName, int count, long size, long compressed) {
+            Group group = groupMap.get(groupName);
+            if (group == null) {
+                group = new Group(groupName);
+                groupMap.put(groupName, group);
+            }
+            group.add(count, size, compressed);
+        }
+        Category sort() {
+            List<Group> results = new ArrayList<>(groupMap.values());
+            results.sort((group1, group2) -> {
+                int i = Long.compare(group2.getSize(), group1.getSize());
+                if (i != 0) {
+                    return i;
+                }
+                return group1.getName().compareTo(group2.getName());
+            });
+            this.groups = results;
+            return this;
+        }
+    }
+    public static class Group {
+        private final String name;
+        private int count;
+        private long size;
+        private long compressedSize;
+
+        Group(String name) {
+            this.name = name;
+        }
+        public String getName() {
+            return name;
+        }
+        public int getCount() {
+            return count;
+        }
+        public long getSize() {
+            return size;
+        }
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+        void add(long size, long compressed) {
+            add(1, size, compressed);
+        }
+        void add(int count, long size, long compressed) {
+            this.count += count;
+            this.size += size;
+            this.compressedSize += compressed;
+        }
+
+        @Override
+        public String toString() {
+            return name + ", count=" + count + ", size=" + size + ", compressed=" + compressedSize;
+        }
+    }
+
+    private static final int CLASS_DEF_SIZE = 32;
+    private static final String DEFAULT_PACKAGE = "(default)";
+    private static final String UNKNOWN_PACKAGE = "(unknown)";
+    private static final String SHARED_DEX_BYTES = "(shared)";
+}
@@ -15,18 +15,18 @@
   */
 package com.reandroid.apkeditor.refactor;
 
+import com.reandroid.apkeditor.utils.IntObjectMap;
+
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 class HtmlColor {
     private static final String RES_NAME_PREFIX="col_";
-    private static Map<Integer, HtmlColor> knownColors;
+    private static IntObjectMap<HtmlColor> knownColors;
     private final String name;
     private final int alpha;
     private final int red;
@@ -179,7 +179,7 @@ class HtmlColor {
         return (int)l;
     }
     static HtmlColor getBestMatch(HtmlColor htmlColor, double tolerance){
-        Map<Integer, HtmlColor> knownMap=getKnownColors();
+        IntObjectMap<HtmlColor> knownMap=getKnownColors();
         HtmlColor result=knownMap.get(htmlColor.getRGBValue());
         if(result!=null){
             return result;
@@ -205,15 +205,15 @@ class HtmlColor {
         }
         return result;
     }
-    private static Map<Integer, HtmlColor> getKnownColors(){
+    private static IntObjectMap<HtmlColor> getKnownColors(){
         if(knownColors==null){
             knownColors=loadColorNames();
         }
         return knownColors;
     }
 
-    private static Map<Integer, HtmlColor> loadColorNames(){
-        Map<Integer, HtmlColor> results=new HashMap<>();
+    private static IntObjectMap<HtmlColor> loadColorNames(){
+        IntObjectMap<HtmlColor> results=new IntObjectMap<>();
         InputStream in = getColorNamesResource();
         if(in==null){
             return results;
@@ -227,8 +227,10 @@ class HtmlColor {
                 if(htmlColor==null){
                     continue;
                 }
-                Integer val=htmlColor.getRGBValue();
-                results.putIfAbsent(val, htmlColor);
+                int val=htmlColor.getRGBValue();
+                if(!results.containsKey(val)){
+                    results.put(val, htmlColor);
+                }
             }
         } catch (IOException e) {
         }
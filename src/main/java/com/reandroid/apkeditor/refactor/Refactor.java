@@ -20,6 +20,7 @@ import com.reandroid.apkeditor.Util;
 import com.reandroid.arsc.chunk.TableBlock;
 import com.reandroid.apk.ApkModule;
 
+import java.io.File;
 import java.io.IOException;
 
 public class Refactor extends CommandExecutor<RefactorOptions> {
@@ -41,6 +42,42 @@ public class Refactor extends CommandExecutor<RefactorOptions> {
             logMessage(protect);
             return;
         }
+        File cacheFile = null;
+        RefactorMapping mapping = null;
+        if(options.mappingCache != null){
+            cacheFile = RefactorMapping.getCacheFile(options.mappingCache, module, options);
+            mapping = RefactorMapping.load(cacheFile);
+        }
+        if(mapping != null){
+            logMessage("Replaying mapping: " + cacheFile);
+            mapping.apply(module);
+            logMessage("Applied renames: " + mapping.count());
+        }else {
+            RefactorMapping.Snapshot snapshot = null;
+            if(cacheFile != null){
+                snapshot = RefactorMapping.snapshot(module);
+            }
+            refactor(module);
+            if(snapshot != null){
+                mapping = snapshot.toMapping(module);
+                mapping.save(cacheFile);
+                logMessage("Saved mapping: " + cacheFile);
+            }
+        }
+        if(options.cleanMeta){
+            logMessage("Clearing META-INF ...");
+            clearMeta(module);
+        }
+        String message = module.refreshTable();
+        if(message != null){
+            logMessage(message);
+        }
+        logMessage("Writing apk ...");
+        module.writeApk(options.outputFile);
+        logMessage("Saved to: "+options.outputFile);
+    }
+    private void refactor(ApkModule module) throws IOException {
+        RefactorOptions options = getOptions();
         if(options.fixTypeNames){
             TypeNameRefactor typeNameRefactor=new TypeNameRefactor(module);
             typeNameRefactor.setApkLogger(this);
@@ -59,16 +96,5 @@ public class Refactor extends CommandExecutor<RefactorOptions> {
             StringValueNameGenerator generator = new StringValueNameGenerator(module.getTableBlock());
             generator.refactor();
         }
-        if(options.cleanMeta){
-            logMessage("Clearing META-INF ...");
-            clearMeta(module);
-        }
-        String message = module.refreshTable();
-        if(message != null){
-            logMessage(message);
-        }
-        logMessage("Writing apk ...");
-        module.writeApk(options.outputFile);
-        logMessage("Saved to: "+options.outputFile);
     }
 }
@@ -0,0 +1,282 @@
+ /*
+  *  Copyright (C) 2022 github.com/REAndroid
+  *
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *      http://www.apache.org/licenses/LICENSE-2.0
+  *
+  * Unless required by applicable law or agreed to in writing, software
+  * distributed under the License is distributed on an "AS IS" BASIS,
+  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  * See the License for the specific language governing permissions and
+  * limitations under the License.
+  */
+package com.reandroid.apkeditor.refactor;
+
+import com.reandroid.apk.ApkModule;
+import com.reandroid.apk.ResFile;
+import com.reandroid.apkeditor.APKEditor;
+import com.reandroid.apkeditor.utils.IntObjectMap;
+import com.reandroid.archive.InputSource;
+import com.reandroid.arsc.chunk.PackageBlock;
+import com.reandroid.arsc.chunk.TableBlock;
+import com.reandroid.arsc.item.TypeString;
+import com.reandroid.arsc.model.ResourceEntry;
+import com.reandroid.json.JSONArray;
+import com.reandroid.json.JSONObject;
+import com.reandroid.utils.HexUtil;
+import com.reandroid.utils.io.FileUtil;
+import com.reandroid.utils.io.IOUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Rename results of a refactor run (type names, entry names and file paths),
+ * stored as json file named after a hash of the original resources.arsc and the
+ * options affecting the result. Replaying it on the same input gives the same
+ * names without running any of the refactor passes.
+ * */
+public class RefactorMapping {
+    private final IntObjectMap<String> typeNames;
+    private final IntObjectMap<String> entryNames;
+    private final Map<String, String> filePaths;
+
+    private RefactorMapping(){
+        this.typeNames = new IntObjectMap<>();
+        this.entryNames = new IntObjectMap<>();
+        this.filePaths = new TreeMap<>();
+    }
+
+    public int count(){
+        return typeNames.size() + entryNames.size() + filePaths.size();
+    }
+    public void apply(ApkModule apkModule){
+        TableBlock tableBlock = apkModule.getTableBlock();
+        for(PackageBlock packageBlock : tableBlock.listPackages()){
+            int pkgId = packageBlock.getId();
+            for(TypeString typeString : packageBlock.getTypeStringPool()){
+                String name = typeNames.get(toTypeKey(pkgId, typeString.getId()));
+                if(name != null && !name.equals(typeString.get())){
+                    typeString.set(name);
+                }
+            }
+        }
+        entryNames.forEach((resourceId, name) -> {
+            ResourceEntry resourceEntry = tableBlock.getResource(resourceId);
+            if(resourceEntry != null && !name.equals(resourceEntry.getName())){
+                resourceEntry.setName(name);
+            }
+        });
+        for(ResFile resFile : apkModule.listResFiles()){
+            String path = filePaths.get(resFile.getFilePath());
+            if(path != null){
+                resFile.setFilePath(path);
+            }
+        }
+    }
+    public void save(File file) throws IOException {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put(NAME_version, VERSION);
+        jsonObject.put(NAME_types, toJson(typeNames));
+        jsonObject.put(NAME_entries, toJson(entryNames));
+        JSONArray files = new JSONArray();
+        for(Map.Entry<String, String> entry : filePaths.entrySet()){
+            JSONObject fileObject = new JSONObject();
+            fileObject.put(NAME_path, entry.getKey());
+            fileObject.put(NAME_new_path, entry.getValue());
+            files.put(fileObject);
+        }
+        jsonObject.put(NAME_files, files);
+        File dir = file.getParentFile();
+        if(dir != null && !dir.exists()){
+            dir.mkdirs();
+        }
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        Files.write(tmp.toPath(), jsonObject.toString(1).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Returns null if the file does not exist, is not a mapping written by this version
+     * or is malformed, the caller refactors as on a cache miss
+     * */
+    public static RefactorMapping load(File file) throws IOException {
+        if(!file.isFile()){
+            return null;
+        }
+        String text = IOUtil.readUtf8(FileUtil.inputStream(file));
+        try{
+            return parse(new JSONObject(text));
+        }catch (RuntimeException ignored){
+            return null;
+        }
+    }
+    private static RefactorMapping parse(JSONObject jsonObject){
+        if(jsonObject.optInt(NAME_version) != VERSION){
+            return null;
+        }
+        RefactorMapping mapping = new RefactorMapping();
+        readJson(jsonObject.optJSONArray(NAME_types), mapping.typeNames);
+        readJson(jsonObject.optJSONArray(NAME_entries), mapping.entryNames);
+        JSONArray files = jsonObject.optJSONArray(NAME_files);
+        if(files != null){
+            int length = files.length();
+            for(int i = 0; i < length; i++){
+                JSONObject fileObject = files.getJSONObject(i);
+                mapping.filePaths.put(fileObject.getString(NAME_path),
+                        fileObject.getString(NAME_new_path));
+            }
+        }
+        return mapping;
+    }
+    public static File getCacheFile(File directory, ApkModule apkModule, RefactorOptions options) throws IOException {
+        return new File(directory, computeKey(apkModule, options) + ".json");
+    }
+    /**
+     * Records current type and entry names, must be called before any refactor pass.
+     * The returned object collects the changes via {@link Snapshot#toMapping(ApkModule)}
+     * */
+    public static Snapshot snapshot(ApkModule apkModule){
+        return new Snapshot(apkModule);
+    }
+
+    private static String computeKey(ApkModule apkModule, RefactorOptions options) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IOException(exception);
+        }
+        InputSource inputSource = apkModule.getZipEntryMap().getInputSource(TableBlock.FILE_NAME);
+        if(inputSource == null){
+            throw new IOException("Don't have " + TableBlock.FILE_NAME);
+        }
+        update(digest, inputSource.openStream());
+        String settings = APKEditor.getVersion() + ",fix-types=" + options.fixTypeNames;
+        digest.update(settings.getBytes(StandardCharsets.UTF_8));
+        if(options.publicXml != null){
+            update(digest, FileUtil.inputStream(options.publicXml));
+        }
+        byte[] hash = digest.digest();
+        StringBuilder builder = new StringBuilder(hash.length * 2);
+        for(byte b : hash){
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+    private static void update(MessageDigest digest, InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[8192];
+        int length;
+        try {
+            while ((length = inputStream.read(buffer)) > 0){
+                digest.update(buffer, 0, length);
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+    private static JSONArray toJson(IntObjectMap<String> map){
+        JSONArray jsonArray = new JSONArray();
+        map.forEach((id, name) -> {
+            JSONObject jsonObject = new JSONObject();
+            jsonObject.put(NAME_id, HexUtil.toHex8("0x", id));
+            jsonObject.put(NAME_name, name);
+            jsonArray.put(jsonObject);
+        });
+        return jsonArray;
+    }
+    private static void readJson(JSONArray jsonArray, IntObjectMap<String> map){
+        if(jsonArray == null){
+            return;
+        }
+        int length = jsonArray.length();
+        for(int i = 0; i < length; i++){
+            JSONObject jsonObject = jsonArray.getJSONObject(i);
+            int id = (int) Long.parseLong(jsonObject.getString(NAME_id).substring(2), 16);
+            map.put(id, jsonObject.getString(NAME_name));
+        }
+    }
+    private static int toTypeKey(int pkgId, int typeId){
+        return (pkgId << 24) | ((0xff & typeId) << 16);
+    }
+
+    public static class Snapshot {
+        private final IntObjectMap<String> typeNames;
+        private final IntObjectMap<String> entryNames;
+
+        private Snapshot(ApkModule apkModule){
+            this.typeNames = new IntObjectMap<>();
+            this.entryNames = new IntObjectMap<>();
+            for(PackageBlock packageBlock : apkModule.getTableBlock().listPackages()){
+                int pkgId = packageBlock.getId();
+                for(TypeString typeString : packageBlock.getTypeStringPool()){
+                    typeNames.put(toTypeKey(pkgId, typeString.getId()), typeString.get());
+                }
+                Iterator<ResourceEntry> iterator = packageBlock.getResources();
+                while (iterator.hasNext()){
+                    ResourceEntry resourceEntry = iterator.next();
+                    String name = resourceEntry.getName();
+                    if(name != null){
+                        entryNames.put(resourceEntry.getResourceId(), name);
+                    }
+                }
+            }
+        }
+        public RefactorMapping toMapping(ApkModule apkModule){
+            RefactorMapping mapping = new RefactorMapping();
+            for(PackageBlock packageBlock : apkModule.getTableBlock().listPackages()){
+                int pkgId = packageBlock.getId();
+                for(TypeString typeString : packageBlock.getTypeStringPool()){
+                    int key = toTypeKey(pkgId, typeString.getId());
+                    String name = typeString.get();
+                    if(name != null && !name.equals(typeNames.get(key))){
+                        mapping.typeNames.put(key, name);
+                    }
+                }
+                Iterator<ResourceEntry> iterator = packageBlock.getResources();
+                while (iterator.hasNext()){
+                    ResourceEntry resourceEntry = iterator.next();
+                    int resourceId = resourceEntry.getResourceId();
+                    String name = resourceEntry.getName();
+                    if(name != null && !name.equals(entryNames.get(resourceId))){
+                        mapping.entryNames.put(resourceId, name);
+                    }
+                }
+            }
+            List<ResFile> resFileList = apkModule.listResFiles();
+            for(ResFile resFile : resFileList){
+                String original = resFile.getInputSource().getName();
+                String path = resFile.getFilePath();
+                if(!original.equals(path)){
+                    mapping.filePaths.put(original, path);
+                }
+            }
+            return mapping;
+        }
+    }
+
+    private static final int VERSION = 1;
+
+    private static final String NAME_version = "version";
+    private static final String NAME_types = "types";
+    private static final String NAME_entries = "entries";
+    private static final String NAME_files = "files";
+    private static final String NAME_id = "id";
+    private static final String NAME_name = "name";
+    private static final String NAME_path = "path";
+    private static final String NAME_new_path = "new_path";
+}
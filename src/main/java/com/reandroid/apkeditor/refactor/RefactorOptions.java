@@ -18,6 +18,7 @@ package com.reandroid.apkeditor.refactor;
 import com.reandroid.apkeditor.Options;
 import com.reandroid.jcommand.annotations.CommandOptions;
 import com.reandroid.jcommand.annotations.OptionArg;
+import com.reandroid.jcommand.exceptions.CommandException;
 
 import java.io.File;
 
@@ -39,6 +40,9 @@ public class RefactorOptions extends Options {
     @OptionArg(name = "-clean-meta", flag = true, description = "clean_meta")
     public boolean cleanMeta;
 
+    @OptionArg(name = "-mapping-cache", description = "refactor_mapping_cache")
+    public File mappingCache;
+
     public RefactorOptions(){
         super();
     }
@@ -52,6 +56,7 @@ public class RefactorOptions extends Options {
     public void validateValues() {
         super.validateValues();
         validatePublicXml();
+        validateMappingCache();
     }
 
     private void validatePublicXml() {
@@ -61,6 +66,13 @@ public class RefactorOptions extends Options {
         }
     }
 
+    private void validateMappingCache() {
+        File dir = this.mappingCache;
+        if(dir != null && dir.isFile()) {
+            throw new CommandException("path_is_file_expect_directory", dir);
+        }
+    }
+
     @Override
     public File generateOutputFromInput(File file) {
         return generateOutputFromInput(file, "_refactored.apk");
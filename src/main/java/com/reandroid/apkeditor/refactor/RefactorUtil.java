@@ -111,6 +111,31 @@ public class RefactorUtil {
     public static String generateUniqueName(String type, int resourceId){
         return type+"_"+String.format("0x%08x", resourceId);
     }
+    /**
+     * Same as generateUniqueName(type, resourceId).equals(name) without building the string
+     * */
+    public static boolean isUniqueName(String name, String type, int resourceId){
+        if(name==null){
+            return false;
+        }
+        int typeLength=type.length();
+        if(name.length()!=typeLength+11 || !name.startsWith(type)){
+            return false;
+        }
+        int i=typeLength;
+        if(name.charAt(i)!='_' || name.charAt(i+1)!='0' || name.charAt(i+2)!='x'){
+            return false;
+        }
+        i=i+3;
+        for(int shift=28;shift>=0;shift=shift-4){
+            char ch=Character.forDigit((resourceId>>>shift) & 0xf, 16);
+            if(name.charAt(i)!=ch){
+                return false;
+            }
+            i++;
+        }
+        return true;
+    }
     public static boolean isAllGoodName(Collection<String> nameList){
         for(String name:nameList){
             if(!PATTERN_GOOD_NAME.matcher(name).matches()){
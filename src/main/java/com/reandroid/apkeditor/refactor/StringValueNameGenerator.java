@@ -1,11 +1,14 @@
 package com.reandroid.apkeditor.refactor;
 
+import com.reandroid.apkeditor.utils.IntObjectMap;
+import com.reandroid.apkeditor.utils.WorkerPool;
 import com.reandroid.arsc.chunk.PackageBlock;
 import com.reandroid.arsc.chunk.TableBlock;
 import com.reandroid.arsc.container.SpecTypePair;
 import com.reandroid.arsc.model.ResourceEntry;
 import com.reandroid.arsc.value.*;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -13,56 +16,75 @@ import java.util.regex.Pattern;
 public class StringValueNameGenerator {
     private final TableBlock tableBlock;
     private final Set<String> mGeneratedNames;
-    private final Set<Integer> mSkipIds;
     public StringValueNameGenerator(TableBlock tableBlock){
         this.tableBlock = tableBlock;
         this.mGeneratedNames=new HashSet<>();
-        this.mSkipIds=new HashSet<>();
     }
-    public void refactor(){
-        Map<Integer, ResourceEntry> resourceEntryMap = mapResourceEntries();
-        Map<Integer, String> nameMap = generate();
-        for(Map.Entry<Integer, String> entry:nameMap.entrySet()){
-            ResourceEntry resourceEntry = resourceEntryMap.get(entry.getKey());
-            String name = entry.getValue();
-            resourceEntry.setName(name);
-        }
-    }
-    private boolean isGenerated(ResourceEntry resourceEntry){
-       String generated = RefactorUtil.generateUniqueName(
-                resourceEntry.getType(),
-                resourceEntry.getResourceId());
-       return generated.equals(resourceEntry.getName());
-    }
-    private Map<Integer, String> generate(){
+    public void refactor() throws IOException {
         mGeneratedNames.clear();
-        mSkipIds.clear();
-        Map<Integer, String> results = new HashMap<>();
-        Set<Integer> skipIds = this.mSkipIds;
-        List<ResourceEntry> resourceEntryList = listResources();
-        for(ResourceEntry resourceEntry:resourceEntryList){
-            if(!isGenerated(resourceEntry)){
-                skipIds.add(resourceEntry.getResourceId());
+        List<StringEntry> stringEntryList = indexStringEntries();
+        generateEnglish(stringEntryList);
+        // Serial and in ascending resource id order, the lowest id keeps the plain name and
+        // the rest get suffixes. Intentional change: before this, conflicts resolved in
+        // HashMap iteration order, which could differ between runs and tables.
+        for(StringEntry stringEntry : stringEntryList){
+            String name = generate(stringEntry.resourceId, stringEntry.englishName);
+            if(name!=null){
+                mGeneratedNames.add(name);
+                stringEntry.resourceEntry.setName(name);
             }
         }
-        for(ResourceEntry resourceEntry:resourceEntryList){
-            int resourceId = resourceEntry.getResourceId();
-            if(results.containsKey(resourceId) || skipIds.contains(resourceId)){
-                continue;
+    }
+    private void generateEnglish(List<StringEntry> stringEntryList) throws IOException {
+        List<List<StringEntry>> batches = new ArrayList<>();
+        int size = stringEntryList.size();
+        for(int i = 0; i < size; i += BATCH_SIZE){
+            batches.add(stringEntryList.subList(i, Math.min(size, i + BATCH_SIZE)));
+        }
+        WorkerPool workerPool = new WorkerPool();
+        workerPool.process(batches.iterator(), batch -> {
+            for(StringEntry stringEntry : batch){
+                stringEntry.englishName = generateEnglish(stringEntry.text);
             }
-            Entry entry = getEnglishOrDefault(resourceEntry);
-            if(entry==null){
+            return batch;
+        }, (batch, result) -> true);
+    }
+    /**
+     * Single pass over string resources, collects entries which still carry generated
+     * names together with the text of their english (or default) value.
+     * Returned in ascending order of resource id.
+     * */
+    private List<StringEntry> indexStringEntries(){
+        IntObjectMap<StringEntry> results = new IntObjectMap<>();
+        for(PackageBlock packageBlock:tableBlock.listPackages()){
+            SpecTypePair specTypePair = packageBlock.getSpecTypePair(TYPE);
+            if(specTypePair == null){
                 continue;
             }
-            ResValue resValue = ((ResTableEntry)entry.getTableEntry()).getValue();
-            String text = resValue.getValueAsString();
-            String name = generate(resourceId, text);
-            if(name!=null){
-                results.put(resourceId, name);
-                mGeneratedNames.add(name);
+            Iterator<ResourceEntry> itr = specTypePair.getResources();
+            while (itr.hasNext()){
+                ResourceEntry resourceEntry = itr.next();
+                if(resourceEntry.isEmpty()){
+                    continue;
+                }
+                int resourceId = resourceEntry.getResourceId();
+                if(!RefactorUtil.isUniqueName(resourceEntry.getName(), TYPE, resourceId)){
+                    results.remove(resourceId);
+                    continue;
+                }
+                Entry entry = getEnglishOrDefault(resourceEntry);
+                if(entry==null){
+                    continue;
+                }
+                ResValue resValue = ((ResTableEntry)entry.getTableEntry()).getValue();
+                String text = resValue.getValueAsString();
+                if(text==null){
+                    continue;
+                }
+                results.put(resourceId, new StringEntry(resourceEntry, resourceId, text));
             }
         }
-        return results;
+        return results.values();
     }
     private Entry getEnglishOrDefault(ResourceEntry resourceEntry){
         Entry def = null;
@@ -91,32 +113,7 @@ public class StringValueNameGenerator {
         }
         return def;
     }
-    private List<ResourceEntry> listResources(){
-        return new ArrayList<>(mapResourceEntries().values());
-    }
-    private Map<Integer, ResourceEntry> mapResourceEntries(){
-        Map<Integer, ResourceEntry> results = new HashMap<>();
-        for(PackageBlock packageBlock:tableBlock.listPackages()){
-            SpecTypePair specTypePair = packageBlock.getSpecTypePair(TYPE);
-            if(specTypePair == null){
-                continue;
-            }
-            Iterator<ResourceEntry> itr = specTypePair.getResources();
-            while (itr.hasNext()){
-                ResourceEntry resourceEntry = itr.next();
-                if(resourceEntry.isEmpty()){
-                    continue;
-                }
-                results.put(resourceEntry.getResourceId(), resourceEntry);
-            }
-        }
-        return results;
-    }
-    private String generate(int resourceId, String text){
-        if(text==null){
-            return null;
-        }
-        String name = generateEnglish(text);
+    private String generate(int resourceId, String name){
         if(name==null){
             return null;
         }
@@ -284,4 +281,18 @@ public class StringValueNameGenerator {
     private static final int MAX_NAME_LEN = 40;
     private static final String PATH_DATA_NAME = "vector_path_data";
     private static final String TYPE = "string";
+    private static final int BATCH_SIZE = 512;
+
+    static class StringEntry {
+        final ResourceEntry resourceEntry;
+        final int resourceId;
+        final String text;
+        String englishName;
+
+        StringEntry(ResourceEntry resourceEntry, int resourceId, String text){
+            this.resourceEntry = resourceEntry;
+            this.resourceId = resourceId;
+            this.text = text;
+        }
+    }
 }
@@ -15,23 +15,21 @@
   */
 package com.reandroid.apkeditor.refactor;
 
+import com.reandroid.apkeditor.utils.IntObjectMap;
 import com.reandroid.xml.XMLDocument;
 import com.reandroid.xml.XMLElement;
 
 import java.util.*;
 
 public class TypeNameMap implements Comparator<TypeNameMap.TypeName> {
-    private final Map<Integer, TypeName> map;
+    private final IntObjectMap<TypeName> map;
+    private final Map<String, Integer> nameCounts;
     public TypeNameMap(){
-        this.map=new HashMap<>();
+        this.map=new IntObjectMap<>();
+        this.nameCounts=new HashMap<>();
     }
     public boolean contains(String name){
-        for(TypeName typeName:map.values()){
-            if(Objects.equals(name, typeName.getName())){
-                return true;
-            }
-        }
-        return false;
+        return nameCounts.containsKey(name);
     }
     public boolean contains(int id){
         id=id&0xffff0000;
@@ -47,7 +45,7 @@ public class TypeNameMap implements Comparator<TypeNameMap.TypeName> {
         return xmlDocument;
     }
     public List<TypeName> listTypeNames(){
-        List<TypeName> results=new ArrayList<>(this.map.values());
+        List<TypeName> results=this.map.values();
         results.sort(this);
         return results;
     }
@@ -68,8 +66,22 @@ public class TypeNameMap implements Comparator<TypeNameMap.TypeName> {
         add(new TypeName(id, name));
     }
     public void add(TypeName typeName){
-        map.remove(typeName.getPackageTypeId());
-        map.put(typeName.getPackageTypeId(), typeName);
+        TypeName previous=map.put(typeName.getPackageTypeId(), typeName);
+        if(previous!=null){
+            removeName(previous.getName());
+        }
+        nameCounts.merge(typeName.getName(), 1, Integer::sum);
+    }
+    private void removeName(String name){
+        Integer count=nameCounts.get(name);
+        if(count==null){
+            return;
+        }
+        if(count<=1){
+            nameCounts.remove(name);
+        }else {
+            nameCounts.put(name, count-1);
+        }
     }
     @Override
     public int compare(TypeName typeName1, TypeName typeName2) {
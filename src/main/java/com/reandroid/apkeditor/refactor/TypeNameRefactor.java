@@ -16,13 +16,13 @@
 package com.reandroid.apkeditor.refactor;
 
 import com.reandroid.apk.*;
+import com.reandroid.apkeditor.utils.IntObjectMap;
+import com.reandroid.apkeditor.utils.WorkerPool;
 import com.reandroid.app.AndroidManifest;
 import com.reandroid.arsc.chunk.PackageBlock;
 import com.reandroid.arsc.chunk.TableBlock;
 import com.reandroid.arsc.chunk.xml.AndroidManifestBlock;
-import com.reandroid.arsc.chunk.xml.ResXmlAttribute;
 import com.reandroid.arsc.chunk.xml.ResXmlDocument;
-import com.reandroid.arsc.chunk.xml.ResXmlElement;
 import com.reandroid.arsc.model.ResourceEntry;
 import com.reandroid.arsc.item.TypeString;
 import com.reandroid.arsc.model.FrameworkTable;
@@ -33,16 +33,20 @@ import com.reandroid.arsc.value.ValueType;
 import com.reandroid.arsc.value.array.ArrayBag;
 import com.reandroid.arsc.value.attribute.AttributeBag;
 import com.reandroid.arsc.value.plurals.PluralsBag;
-import com.reandroid.utils.collection.CollectionUtil;
 import com.reandroid.xml.XMLDocument;
 import com.reandroid.xml.XMLElement;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
 
 public class TypeNameRefactor {
     private final ApkModule apkModule;
-    private Map<Integer,TypeString> mTypeStrings;
+    private IntObjectMap<TypeString> mTypeStrings;
+    // written only by the consuming thread, read by the xml workers
+    private volatile boolean mFinished;
     private APKLogger apkLogger;
     private final TypeNameMap refactoredTypeMap;
     public TypeNameRefactor(ApkModule apkModule){
@@ -76,9 +80,7 @@ public class TypeNameRefactor {
             log.append(element.getDebugText());
         }
         TypeNameMap remain=new TypeNameMap();
-        for(Map.Entry<Integer, TypeString> entry:mTypeStrings.entrySet()){
-            remain.add(entry.getKey(), entry.getValue().get());
-        }
+        mTypeStrings.forEach((id, typeString) -> remain.add(id, typeString.get()));
         if(remain.count()>0){
             log.append("\n");
             XMLDocument xmlDocument=remain.toXMLDocument();
@@ -168,19 +170,36 @@ public class TypeNameRefactor {
     }
     private void scanResFiles() throws IOException {
         logMessage("Refactoring from resource files ...");
+        if(isFinished()){
+            return;
+        }
+        List<ResFile> xmlFiles=new ArrayList<>();
         for(ResFile resFile: apkModule.listResFiles()){
-            if(isFinished()){
-                break;
-            }
             if(resFile.isBinaryXml()){
-                ResXmlDocument resXmlDocument=new ResXmlDocument();
-                resXmlDocument.readBytes(resFile.getInputSource().openStream());
-                scanXml(resXmlDocument, resFile.pickOne().getResourceId());
+                xmlFiles.add(resFile);
             }
         }
+        WorkerPool workerPool=new WorkerPool();
+        workerPool.process(xmlFiles.iterator(), this::readFeatures, (resFile, xmlFeatures) -> {
+            scanXml(xmlFeatures, resFile.pickOne().getResourceId());
+            return !isFinished();
+        });
+    }
+    private XmlFeatures readFeatures(ResFile resFile) throws IOException {
+        if(isFinished()){
+            return null;
+        }
+        byte[] bytes;
+        // archive sources share one underlying file, only parsing runs concurrently
+        synchronized (apkModule){
+            bytes=readAll(resFile.getInputSource().openStream());
+        }
+        ResXmlDocument resXmlDocument=new ResXmlDocument();
+        resXmlDocument.readBytes(new ByteArrayInputStream(bytes));
+        return XmlFeatures.read(resXmlDocument);
     }
     private void loadTypeStrings(TableBlock tableBlock){
-        mTypeStrings=new HashMap<>();
+        mTypeStrings=new IntObjectMap<>();
         for(PackageBlock packageBlock:tableBlock.listPackages()){
             int pkgId=packageBlock.getId();
             for(TypeString typeString:packageBlock.getTypeStringPool()){
@@ -188,90 +207,98 @@ public class TypeNameRefactor {
                 mTypeStrings.put(pkgTypeId, typeString);
             }
         }
+        mFinished=mTypeStrings.size()==0;
     }
     private void scanXml(ResXmlDocument xmlBlock, int resourceId){
-        boolean isManifest=(xmlBlock instanceof AndroidManifestBlock);
+        scanXml(XmlFeatures.read(xmlBlock), resourceId,
+                xmlBlock instanceof AndroidManifestBlock);
+    }
+    private void scanXml(XmlFeatures xmlFeatures, int resourceId){
+        if(xmlFeatures!=null){
+            scanXml(xmlFeatures, resourceId, false);
+        }
+    }
+    private void scanXml(XmlFeatures xmlFeatures, int resourceId, boolean isManifest){
         if(!isManifest && resourceId!=0 && !hasRefactoredId(resourceId)){
             boolean renameOk;
-            renameOk = checkLayout(xmlBlock, resourceId);
+            renameOk = checkLayout(xmlFeatures, resourceId);
             if(renameOk){
                 return;
             }
-            renameOk = checkDrawable(xmlBlock, resourceId);
+            renameOk = checkDrawable(xmlFeatures, resourceId);
             if(renameOk){
                 return;
             }
-            renameOk = checkAnimator(xmlBlock, resourceId);
+            renameOk = checkAnimator(xmlFeatures, resourceId);
             if(renameOk){
                 return;
             }
-            renameOk = checkMenu(xmlBlock, resourceId);
+            renameOk = checkMenu(xmlFeatures, resourceId);
             if(renameOk){
                 return;
             }
-            renameOk = checkXml(xmlBlock, resourceId);
+            renameOk = checkXml(xmlFeatures, resourceId);
             if(renameOk){
                 return;
             }
-            renameOk = checkAnim(xmlBlock, resourceId);
+            renameOk = checkAnim(xmlFeatures, resourceId);
             if(renameOk){
                 return;
             }
-            renameOk = checkInterpolator(xmlBlock, resourceId);
+            renameOk = checkInterpolator(xmlFeatures, resourceId);
             if(renameOk){
                 return;
             }
         }
-        List<ResXmlAttribute> attributeList = CollectionUtil.toList(xmlBlock.recursiveAttributes());
-        for(ResXmlAttribute attribute:attributeList){
-            scanAttribute(attribute, isManifest);
+        int count=xmlFeatures.getAttributeCount();
+        for(int i=0;i<count;i++){
+            scanAttribute(xmlFeatures.getAttributeNameId(i),
+                    xmlFeatures.getAttributeValueType(i),
+                    xmlFeatures.getAttributeData(i),
+                    isManifest);
         }
     }
-    private void scanAttribute(ResXmlAttribute attribute, boolean isManifest){
+    private void scanAttribute(int nameId, ValueType valueType, int data, boolean isManifest){
         boolean renameOk;
         if(isManifest){
-            renameOk = checkString(attribute);
+            renameOk = checkString(nameId, valueType, data);
             if(!renameOk){
-                renameOk = checkStyle(attribute);
+                renameOk = checkStyle(nameId, valueType, data);
             }
             return;
         }
-        renameOk = checkAttr(attribute);
-        if(hasRefactoredId(attribute.getData())){
+        renameOk = checkAttr(nameId);
+        if(hasRefactoredId(data)){
             return;
         }
         if(!renameOk){
-            renameOk = checkId(attribute);
+            renameOk = checkId(nameId, valueType, data);
         }
         if(!renameOk){
-            renameOk = checkDimen(attribute);
+            renameOk = checkDimen(nameId, valueType, data);
         }
         if(!renameOk){
-            renameOk = checkInteger(attribute);
+            renameOk = checkInteger(nameId, valueType, data);
         }
         if(!renameOk){
-            renameOk = checkColor(attribute);
+            renameOk = checkColor(nameId, valueType, data);
         }
         if(!renameOk){
-            renameOk = checkBool(attribute);
+            renameOk = checkBool(nameId, valueType, data);
         }
     }
-    private boolean checkInterpolator(ResXmlDocument resXmlDocument, int resourceId){
+    private boolean checkInterpolator(XmlFeatures xmlFeatures, int resourceId){
         String name="interpolator";
         if(hasRefactoredName(name)){
             return false;
         }
-        ResXmlElement root=resXmlDocument.getDocumentElement();
-        if(root==null){
-            return false;
-        }
-        String tag=root.getName();
+        String tag=xmlFeatures.getRootName();
         if(!"pathInterpolator".equals(tag) && !"linearInterpolator".equals(tag)){
             return false;
         }
         return rename(resourceId, name);
     }
-    private boolean checkAnim(ResXmlDocument resXmlDocument, int resourceId){
+    private boolean checkAnim(XmlFeatures xmlFeatures, int resourceId){
         String name="anim";
         if(hasRefactoredName(name)){
             return false;
@@ -279,127 +306,69 @@ public class TypeNameRefactor {
         if(!hasRefactoredName("animator")){
             return false;
         }
-        ResXmlElement root=resXmlDocument.getDocumentElement();
-        if(root==null){
-            return false;
-        }
-        if(!"alpha".equals(root.getName())){
-            return false;
-        }
-        int fromAlpha=0x010101ca;
-        if(root.searchAttributeByResourceId(fromAlpha)==null){
+        if(!xmlFeatures.isAlphaWithFromAlpha()){
             return false;
         }
         return rename(resourceId, name);
     }
-    private boolean checkXml(ResXmlDocument resXmlDocument, int resourceId){
+    private boolean checkXml(XmlFeatures xmlFeatures, int resourceId){
         String name="xml";
         if(hasRefactoredName(name)){
             return false;
         }
-        ResXmlElement root=resXmlDocument.getDocumentElement();
-        if(root==null){
-            return false;
-        }
-        if(!isXml(root)){
+        if(!xmlFeatures.isXml()){
             return false;
         }
         return rename(resourceId, name);
     }
-    private boolean checkMenu(ResXmlDocument resXmlDocument, int resourceId){
+    private boolean checkMenu(XmlFeatures xmlFeatures, int resourceId){
         String name="menu";
         if(hasRefactoredName(name)){
             return false;
         }
-        ResXmlElement root=resXmlDocument.getDocumentElement();
-        if(root==null){
-            return false;
-        }
-        if(!"menu".equals(root.getName())){
-            return false;
-        }
-        if(!root.getElements("item").hasNext()){
+        if(!xmlFeatures.isMenuWithItems()){
             return false;
         }
         return rename(resourceId, name);
     }
-    private boolean checkAnimator(ResXmlDocument resXmlDocument, int resourceId){
+    private boolean checkAnimator(XmlFeatures xmlFeatures, int resourceId){
         String name="animator";
         if(hasRefactoredName(name)){
             return false;
         }
-        ResXmlElement root=resXmlDocument.getDocumentElement();
-        if(root==null){
-            return false;
-        }
-        if(!"selector".equals(root.getName())){
-            return false;
-        }
-        int state_enabled=0x0101009e;
-        boolean hasObjectAnimator=false;
-        Iterator<ResXmlElement> iterator = root.getElements("item");
-        while (iterator.hasNext()) {
-            ResXmlElement itemElement = iterator.next();
-            if (itemElement.searchAttributeByResourceId(state_enabled) != null ) {
-                if (itemElement.getElements("objectAnimator").hasNext()) {
-                    hasObjectAnimator = true;
-                    break;
-                }
-            }
-        }
-        if(!hasObjectAnimator){
+        if(!xmlFeatures.isAnimatorSelector()){
             return false;
         }
         return rename(resourceId, name);
     }
-    private boolean checkDrawable(ResXmlDocument resXmlDocument, int resourceId){
+    private boolean checkDrawable(XmlFeatures xmlFeatures, int resourceId){
         String name="drawable";
         if(hasRefactoredName(name)){
             return false;
         }
-        ResXmlElement root=resXmlDocument.getDocumentElement();
-        if(root==null){
-            return false;
-        }
-        if(!"vector".equals(root.getName())){
-            return false;
-        }
-        int pathData=0x01010405;
-        boolean hasPathData=false;
-        Iterator<ResXmlElement> iterator = root.getElements("path");
-        while (iterator.hasNext()){
-            ResXmlElement element = iterator.next();
-            if (element.searchAttributeByResourceId(pathData) != null) {
-                hasPathData = true;
-            }
-        }
-        if(!hasPathData){
+        if(!xmlFeatures.isVectorWithPathData()){
             return false;
         }
         return rename(resourceId, name);
     }
-    private boolean checkLayout(ResXmlDocument resXmlDocument, int resourceId){
+    private boolean checkLayout(XmlFeatures xmlFeatures, int resourceId){
         String name="layout";
         if(hasRefactoredName(name)){
             return false;
         }
-        ResXmlElement root=resXmlDocument.getDocumentElement();
-        if(root==null){
-            return false;
-        }
-        if(!"LinearLayout".equals(root.getName())){
+        if(!"LinearLayout".equals(xmlFeatures.getRootName())){
             return false;
         }
         return rename(resourceId, name);
     }
-    private boolean checkAttr(ResXmlAttribute attribute){
+    private boolean checkAttr(int nameId){
         String name="attr";
         if(hasRefactoredName(name)){
             return false;
         }
-        return rename(attribute.getNameId(), name);
+        return rename(nameId, name);
     }
-    private boolean checkColor(ResXmlAttribute attribute){
+    private boolean checkColor(int nameId, ValueType valueType, int data){
         String name="color";
         if(hasRefactoredName(name)){
             return false;
@@ -408,138 +377,101 @@ public class TypeNameRefactor {
             return false;
         }
         int textColor=0x01010098;
-        int nameId=attribute.getNameId();
         if(nameId!=textColor){
             return false;
         }
-        if(attribute.getValueType() != ValueType.REFERENCE){
+        if(valueType != ValueType.REFERENCE){
             return true;
         }
-        rename(attribute.getData(), name);
+        rename(data, name);
         return true;
     }
-    private boolean checkBool(ResXmlAttribute attribute){
+    private boolean checkBool(int nameId, ValueType valueType, int data){
         return checkWithAndroidAttribute("bool",
-                attribute, AttributeDataFormat.BOOL);
+                nameId, valueType, data, AttributeDataFormat.BOOL);
     }
-    private boolean checkInteger(ResXmlAttribute attribute){
+    private boolean checkInteger(int nameId, ValueType valueType, int data){
         return checkWithAndroidAttribute("integer",
-                attribute, AttributeDataFormat.INTEGER);
+                nameId, valueType, data, AttributeDataFormat.INTEGER);
     }
     private boolean checkWithAndroidAttribute(String name,
-                                              ResXmlAttribute attribute,
+                                              int nameId,
+                                              ValueType valueType,
+                                              int data,
                                               AttributeDataFormat attributeValueType){
         if(hasRefactoredName(name)){
             return false;
         }
-        int nameId=attribute.getNameId();
         if(nameId == 0){
             return false;
         }
-        if(attribute.getValueType() != ValueType.REFERENCE){
+        if(valueType != ValueType.REFERENCE){
             return true;
         }
         if(!isEqualAndroidAttributeType(nameId, attributeValueType)){
             return false;
         }
-        rename(attribute.getData(), name);
+        rename(data, name);
         return true;
     }
-    private boolean checkDimen(ResXmlAttribute attribute){
+    private boolean checkDimen(int nameId, ValueType valueType, int data){
         String name="dimen";
         if(hasRefactoredName(name)){
             return false;
         }
         int layout_width=0x010100f4;
         int layout_height=0x010100f5;
-        int nameId=attribute.getNameId();
         if(nameId!=layout_width && nameId!=layout_height){
             return false;
         }
-        if(attribute.getValueType() != ValueType.REFERENCE){
+        if(valueType != ValueType.REFERENCE){
             return true;
         }
-        rename(attribute.getData(), name);
+        rename(data, name);
         return true;
     }
-    private boolean checkId(ResXmlAttribute attribute){
+    private boolean checkId(int nameId, ValueType valueType, int data){
         String name="id";
         if(hasRefactoredName(name)){
             return false;
         }
-        if(attribute.getNameId()!=AndroidManifest.ID_id){
+        if(nameId!=AndroidManifest.ID_id){
             return false;
         }
-        if(attribute.getValueType() != ValueType.REFERENCE){
+        if(valueType != ValueType.REFERENCE){
             return true;
         }
-        rename(attribute.getData(), name);
+        rename(data, name);
         return true;
     }
-    private boolean checkStyle(ResXmlAttribute attribute){
+    private boolean checkStyle(int nameId, ValueType valueType, int data){
         String name="style";
         if(hasRefactoredName(name)){
             return false;
         }
-        if(attribute.getNameId() != AndroidManifest.ID_theme){
+        if(nameId != AndroidManifest.ID_theme){
             return false;
         }
-        if(attribute.getValueType() != ValueType.REFERENCE){
+        if(valueType != ValueType.REFERENCE){
             return true;
         }
-        rename(attribute.getData(), name);
+        rename(data, name);
         return true;
     }
-    private boolean checkString(ResXmlAttribute attribute){
+    private boolean checkString(int nameId, ValueType valueType, int data){
         String name="string";
         if(hasRefactoredName(name)){
             return false;
         }
-        if(attribute.getNameId() != AndroidManifest.ID_label){
+        if(nameId != AndroidManifest.ID_label){
             return false;
         }
-        if(attribute.getValueType() != ValueType.REFERENCE){
+        if(valueType != ValueType.REFERENCE){
             return true;
         }
-        rename(attribute.getData(), name);
+        rename(data, name);
         return true;
     }
-    private boolean isXml(ResXmlElement root){
-        if(isPaths(root)){
-            return true;
-        }
-        if(isPreferenceScreen(root)){
-            return true;
-        }
-        return false;
-    }
-    private boolean isPreferenceScreen(ResXmlElement root){
-        if(!"PreferenceScreen".equals(root.getName())){
-            return false;
-        }
-        return root.getElement("PreferenceCategory") != null ||
-                root.getElement("CheckBoxPreference") != null;
-    }
-    private boolean isPaths(ResXmlElement root){
-        if(!"paths".equals(root.getName())){
-            return false;
-        }
-        Iterator<ResXmlElement> iterator = root.getElements();
-        while(iterator.hasNext()){
-            ResXmlElement element = iterator.next();
-            String tag = element.getName();
-            if("files-path".equals(tag) || "cache-path".equals(tag)){
-                return true;
-            }
-            if("external-path".equals(tag) || "root-path".equals(tag)){
-                return true;
-            }
-            if("external-files-path".equals(tag) || "external-cache-path".equals(tag)){
-                return true;
-            }
-        }
-        return false;
-    }
     private boolean rename(int resourceId, String name){
         TypeString typeString=getTypeString(resourceId);
         if(typeString==null){
@@ -586,7 +518,7 @@ public class TypeNameRefactor {
         refactoredTypeMap.add(id, name);
     }
     private boolean isFinished(){
-        return mTypeStrings.size()==0;
+        return mFinished;
     }
     private boolean hasRefactoredName(String name){
         return refactoredTypeMap.contains(name);
@@ -599,6 +531,9 @@ public class TypeNameRefactor {
     }
     private void removeTypeString(int resourceId){
         mTypeStrings.remove(resourceId&0xffff0000);
+        if(mTypeStrings.size()==0){
+            mFinished=true;
+        }
     }
     private void logMessage(String msg){
         APKLogger logger=apkLogger;
@@ -606,6 +541,19 @@ public class TypeNameRefactor {
             logger.logMessage(msg);
         }
     }
+    private static byte[] readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream=new ByteArrayOutputStream();
+        byte[] buffer=new byte[8192];
+        int length;
+        try {
+            while ((length=inputStream.read(buffer))>0){
+                outputStream.write(buffer, 0, length);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return outputStream.toByteArray();
+    }
     private void logVerbose(String msg){
         APKLogger logger=apkLogger;
         if(logger!=null){
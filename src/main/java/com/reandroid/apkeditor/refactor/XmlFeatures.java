@@ -0,0 +1,193 @@
+ /*
+  *  Copyright (C) 2022 github.com/REAndroid
+  *
+  *  Licensed under the Apache License, Version 2.0 (the "License");
+  *  you may not use this file except in compliance with the License.
+  *  You may obtain a copy of the License at
+  *
+  *      http://www.apache.org/licenses/LICENSE-2.0
+  *
+  * Unless required by applicable law or agreed to in writing, software
+  * distributed under the License is distributed on an "AS IS" BASIS,
+  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  * See the License for the specific language governing permissions and
+  * limitations under the License.
+  */
+package com.reandroid.apkeditor.refactor;
+
+import com.reandroid.arsc.chunk.xml.ResXmlAttribute;
+import com.reandroid.arsc.chunk.xml.ResXmlDocument;
+import com.reandroid.arsc.chunk.xml.ResXmlElement;
+import com.reandroid.arsc.value.ValueType;
+
+import java.util.Iterator;
+
+/**
+ * Everything TypeNameRefactor needs to know about a single xml document,
+ * extracted once so that the parsed document itself can be dropped right away.
+ * Instances are built independently of refactoring state, thus can be
+ * created on worker threads.
+ * */
+class XmlFeatures {
+    private final String rootName;
+    private final boolean vectorWithPathData;
+    private final boolean animatorSelector;
+    private final boolean menuWithItems;
+    private final boolean xmlRoot;
+    private final boolean alphaWithFromAlpha;
+    private final int[] attributeNames;
+    private final ValueType[] attributeTypes;
+    private final int[] attributeData;
+
+    private XmlFeatures(ResXmlDocument resXmlDocument){
+        ResXmlElement root=resXmlDocument.getDocumentElement();
+        if(root!=null){
+            rootName=root.getName();
+            vectorWithPathData=isVectorWithPathData(root);
+            animatorSelector=isAnimatorSelector(root);
+            menuWithItems=isMenuWithItems(root);
+            xmlRoot=isXml(root);
+            alphaWithFromAlpha=isAlphaWithFromAlpha(root);
+        }else {
+            rootName=null;
+            vectorWithPathData=false;
+            animatorSelector=false;
+            menuWithItems=false;
+            xmlRoot=false;
+            alphaWithFromAlpha=false;
+        }
+        int count=0;
+        Iterator<ResXmlAttribute> iterator=resXmlDocument.recursiveAttributes();
+        while (iterator.hasNext()){
+            iterator.next();
+            count++;
+        }
+        attributeNames=new int[count];
+        attributeTypes=new ValueType[count];
+        attributeData=new int[count];
+        iterator=resXmlDocument.recursiveAttributes();
+        for(int i=0;i<count && iterator.hasNext();i++){
+            ResXmlAttribute attribute=iterator.next();
+            attributeNames[i]=attribute.getNameId();
+            attributeTypes[i]=attribute.getValueType();
+            attributeData[i]=attribute.getData();
+        }
+    }
+    String getRootName(){
+        return rootName;
+    }
+    boolean hasRoot(){
+        return rootName!=null;
+    }
+    boolean isVectorWithPathData(){
+        return vectorWithPathData;
+    }
+    boolean isAnimatorSelector(){
+        return animatorSelector;
+    }
+    boolean isMenuWithItems(){
+        return menuWithItems;
+    }
+    boolean isXml(){
+        return xmlRoot;
+    }
+    boolean isAlphaWithFromAlpha(){
+        return alphaWithFromAlpha;
+    }
+    int getAttributeCount(){
+        return attributeNames.length;
+    }
+    int getAttributeNameId(int i){
+        return attributeNames[i];
+    }
+    ValueType getAttributeValueType(int i){
+        return attributeTypes[i];
+    }
+    int getAttributeData(int i){
+        return attributeData[i];
+    }
+
+    static XmlFeatures read(ResXmlDocument resXmlDocument){
+        return new XmlFeatures(resXmlDocument);
+    }
+
+    private static boolean isVectorWithPathData(ResXmlElement root){
+        if(!"vector".equals(root.getName())){
+            return false;
+        }
+        int pathData=0x01010405;
+        Iterator<ResXmlElement> iterator = root.getElements("path");
+        while (iterator.hasNext()){
+            ResXmlElement element = iterator.next();
+            if (element.searchAttributeByResourceId(pathData) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+    private static boolean isAnimatorSelector(ResXmlElement root){
+        if(!"selector".equals(root.getName())){
+            return false;
+        }
+        int state_enabled=0x0101009e;
+        Iterator<ResXmlElement> iterator = root.getElements("item");
+        while (iterator.hasNext()) {
+            ResXmlElement itemElement = iterator.next();
+            if (itemElement.searchAttributeByResourceId(state_enabled) != null ) {
+                if (itemElement.getElements("objectAnimator").hasNext()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    private static boolean isMenuWithItems(ResXmlElement root){
+        if(!"menu".equals(root.getName())){
+            return false;
+        }
+        return root.getElements("item").hasNext();
+    }
+    private static boolean isAlphaWithFromAlpha(ResXmlElement root){
+        if(!"alpha".equals(root.getName())){
+            return false;
+        }
+        int fromAlpha=0x010101ca;
+        return root.searchAttributeByResourceId(fromAlpha)!=null;
+    }
+    private static boolean isXml(ResXmlElement root){
+        if(isPaths(root)){
+            return true;
+        }
+        if(isPreferenceScreen(root)){
+            return true;
+        }
+        return false;
+    }
+    private static boolean isPreferenceScreen(ResXmlElement root){
+        if(!"PreferenceScreen".equals(root.getName())){
+            return false;
+        }
+        return root.getElement("PreferenceCategory") != null ||
+                root.getElement("CheckBoxPreference") != null;
+    }
+    private static boolean isPaths(ResXmlElement root){
+        if(!"paths".equals(root.getName())){
+            return false;
+        }
+        Iterator<ResXmlElement> iterator = root.getElements();
+        while(iterator.hasNext()){
+            ResXmlElement element = iterator.next();
+            String tag = element.getName();
+            if("files-path".equals(tag) || "cache-path".equals(tag)){
+                return true;
+            }
+            if("external-path".equals(tag) || "root-path".equals(tag)){
+                return true;
+            }
+            if("external-files-path".equals(tag) || "external-cache-path".equals(tag)){
+                return true;
+            }
+        }
+        return false;
+    }
+}
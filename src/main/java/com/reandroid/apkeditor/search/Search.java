@@ -0,0 +1,161 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.search;
+
+import com.reandroid.apkeditor.CommandExecutor;
+import com.reandroid.apkeditor.info.InfoWriter;
+import com.reandroid.apkeditor.utils.WorkerPool;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Searches strings of dex files, resources.arsc and binary xml files (including
+ * AndroidManifest.xml) of an apk or of all apk files under a directory.
+ * */
+public class Search extends CommandExecutor<SearchOptions> {
+
+    private final WorkerPool workerPool;
+
+    public Search(SearchOptions options) {
+        super(options, "[SEARCH] ");
+        super.setEnableLog(options.outputFile != null);
+        this.workerPool = new WorkerPool();
+    }
+
+    @Override
+    public void runCommand() throws IOException {
+        SearchOptions options = getOptions();
+        delete(options.outputFile);
+        StringMatcher matcher = options.newMatcher();
+        InfoWriter infoWriter = InfoWriter.create(options.type, options.outputFile);
+        int found = 0;
+        int failed = 0;
+        try {
+            for (File file : listApkFiles(options.inputFile)) {
+                List<String> matches;
+                try {
+                    matches = search(file, matcher);
+                } catch (IOException | RuntimeException exception) {
+                    // e.g. truncated apk or invalid dex, the rest of the files are searched
+                    logWarn("Failed to search: " + file + ", " + exception.getMessage());
+                    failed++;
+                    continue;
+                }
+                if (!matches.isEmpty()) {
+                    found++;
+                    infoWriter.writeArray(file.getPath(), matches.toArray(new String[0]));
+                }
+            }
+            infoWriter.flush();
+        } finally {
+            infoWriter.close();
+        }
+        logMessage("Found in " + found + " files");
+        if (failed != 0) {
+            logWarn("Failed to search " + failed + " files");
+        }
+        if (options.outputFile != null) {
+            logMessage("Saved to: " + options.outputFile);
+        }
+    }
+
+    private List<String> search(File file, StringMatcher matcher) throws IOException {
+        logVerbose("Searching: " + file);
+        List<String> results = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(file)) {
+            File indexDir = getOptions().indexDir;
+            if (indexDir != null) {
+                SearchIndex index = loadIndex(zipFile, indexDir);
+                index.search(matcher, (source, str) -> results.add(format(source, str)));
+                return results;
+            }
+            workerPool.process(StringSource.listEntries(zipFile).iterator(),
+                    zipEntry -> findMatches(zipFile, zipEntry, matcher),
+                    (zipEntry, matches) -> {
+                        results.addAll(matches);
+                        return true;
+                    });
+        }
+        return results;
+    }
+    private SearchIndex loadIndex(ZipFile zipFile, File indexDir) throws IOException {
+        File indexFile = SearchIndex.getIndexFile(indexDir, zipFile);
+        SearchIndex index = SearchIndex.load(indexFile);
+        if (index != null) {
+            return index;
+        }
+        List<StringSource> sources = new ArrayList<>();
+        workerPool.process(StringSource.listEntries(zipFile).iterator(),
+                zipEntry -> StringSource.read(zipFile, zipEntry),
+                (zipEntry, source) -> {
+                    if (source != null) {
+                        sources.add(source);
+                    }
+                    return true;
+                });
+        index = SearchIndex.build(sources);
+        index.save(indexFile);
+        logVerbose("Saved index: " + indexFile);
+        return index;
+    }
+    private static List<String> findMatches(ZipFile zipFile, ZipEntry zipEntry,
+                                            StringMatcher matcher) throws IOException {
+        List<String> results = new ArrayList<>();
+        StringSource source = StringSource.read(zipFile, zipEntry);
+        if (source == null) {
+            return results;
+        }
+        String name = source.getName();
+        for (String str : source.getStrings()) {
+            if (matcher.matches(str)) {
+                results.add(format(name, str));
+            }
+        }
+        return results;
+    }
+    private static String format(String source, String str) {
+        return source + ": " + str.replace("\n", "\\n");
+    }
+    private static List<File> listApkFiles(File file) {
+        List<File> results = new ArrayList<>();
+        if (file.isFile()) {
+            results.add(file);
+        } else {
+            addApkFiles(file, results);
+        }
+        return results;
+    }
+    private static void addApkFiles(File dir, List<File> results) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                addApkFiles(file, results);
+            } else if (file.getName().toLowerCase().endsWith(".apk")) {
+                results.add(file);
+            }
+        }
+    }
+}
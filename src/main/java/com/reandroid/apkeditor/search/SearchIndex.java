@@ -0,0 +1,303 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.search;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Persistent per apk index of all searchable strings plus a case insensitive trigram
+ * index. Literal searches only verify strings containing every trigram of the query,
+ * regular expressions scan the stored strings, neither needs the apk to be parsed.
+ * Index files are keyed by a hash of zip central directory (names, crc and sizes).
+ * */
+class SearchIndex {
+    private final String[] sourceNames;
+    private final int[] sourceStarts;
+    private final String[] strings;
+    private final Map<Long, int[]> postings;
+
+    private SearchIndex(String[] sourceNames, int[] sourceStarts, String[] strings, Map<Long, int[]> postings) {
+        this.sourceNames = sourceNames;
+        this.sourceStarts = sourceStarts;
+        this.strings = strings;
+        this.postings = postings;
+    }
+
+    /**
+     * Passes matching strings to consumer in source order
+     * */
+    void search(StringMatcher matcher, MatchConsumer consumer) {
+        int[] candidates = getCandidates(matcher.getLiteral());
+        String[] strings = this.strings;
+        int source = 0;
+        int count = candidates != null ? candidates.length : strings.length;
+        for (int i = 0; i < count; i++) {
+            int id = candidates != null ? candidates[i] : i;
+            String str = strings[id];
+            if (!matcher.matches(str)) {
+                continue;
+            }
+            while (id >= sourceStarts[source + 1]) {
+                source++;
+            }
+            consumer.accept(sourceNames[source], str);
+        }
+    }
+    /**
+     * @return sorted ids of strings containing all trigrams of literal, null if every string is a candidate
+     * */
+    private int[] getCandidates(String literal) {
+        if (literal == null || literal.length() < 3) {
+            return null;
+        }
+        String lower = literal.toLowerCase(Locale.ROOT);
+        int[] results = null;
+        int length = lower.length();
+        for (int i = 0; i + 3 <= length; i++) {
+            int[] ids = postings.get(trigram(lower, i));
+            if (ids == null) {
+                return new int[0];
+            }
+            results = results == null ? ids : intersect(results, ids);
+            if (results.length == 0) {
+                break;
+            }
+        }
+        return results;
+    }
+
+    void save(File file) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists()) {
+            dir.mkdirs();
+        }
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(tmp))))) {
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            int sourceCount = sourceNames.length;
+            outputStream.writeInt(sourceCount);
+            for (int i = 0; i < sourceCount; i++) {
+                outputStream.writeUTF(sourceNames[i]);
+                outputStream.writeInt(sourceStarts[i + 1] - sourceStarts[i]);
+            }
+            for (String str : strings) {
+                byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(outputStream, bytes.length);
+                outputStream.write(bytes);
+            }
+            outputStream.writeInt(postings.size());
+            for (Map.Entry<Long, int[]> entry : postings.entrySet()) {
+                outputStream.writeLong(entry.getKey());
+                int[] ids = entry.getValue();
+                writeVarInt(outputStream, ids.length);
+                int previous = 0;
+                for (int id : ids) {
+                    writeVarInt(outputStream, id - previous);
+                    previous = id;
+                }
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Returns null if the file does not exist or is not an index written by this version.
+     * A file that fails to parse (truncated, corrupt) is deleted, the caller rebuilds it.
+     * */
+    static SearchIndex load(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))))) {
+            if (inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION) {
+                return null;
+            }
+            int sourceCount = inputStream.readInt();
+            String[] sourceNames = new String[sourceCount];
+            int[] sourceStarts = new int[sourceCount + 1];
+            for (int i = 0; i < sourceCount; i++) {
+                sourceNames[i] = inputStream.readUTF();
+                sourceStarts[i + 1] = sourceStarts[i] + inputStream.readInt();
+            }
+            String[] strings = new String[sourceStarts[sourceCount]];
+            byte[] buffer = new byte[256];
+            for (int i = 0; i < strings.length; i++) {
+                int length = readVarInt(inputStream);
+                if (length > buffer.length) {
+                    buffer = new byte[length];
+                }
+                inputStream.readFully(buffer, 0, length);
+                strings[i] = new String(buffer, 0, length, StandardCharsets.UTF_8);
+            }
+            int size = inputStream.readInt();
+            Map<Long, int[]> postings = new HashMap<>(Math.max(16, size * 4 / 3 + 1));
+            for (int i = 0; i < size; i++) {
+                long key = inputStream.readLong();
+                int[] ids = new int[readVarInt(inputStream)];
+                int previous = 0;
+                for (int j = 0; j < ids.length; j++) {
+                    previous += readVarInt(inputStream);
+                    ids[j] = previous;
+                }
+                postings.put(key, ids);
+            }
+            return new SearchIndex(sourceNames, sourceStarts, strings, postings);
+        } catch (IOException | RuntimeException exception) {
+            file.delete();
+            return null;
+        }
+    }
+
+    static SearchIndex build(List<StringSource> sources) {
+        int sourceCount = sources.size();
+        String[] sourceNames = new String[sourceCount];
+        int[] sourceStarts = new int[sourceCount + 1];
+        for (int i = 0; i < sourceCount; i++) {
+            StringSource source = sources.get(i);
+            sourceNames[i] = source.getName();
+            sourceStarts[i + 1] = sourceStarts[i] + source.getStrings().length;
+        }
+        String[] strings = new String[sourceStarts[sourceCount]];
+        Map<Long, PostingList> builders = new HashMap<>();
+        int id = 0;
+        for (StringSource source : sources) {
+            for (String str : source.getStrings()) {
+                strings[id] = str;
+                String lower = str.toLowerCase(Locale.ROOT);
+                int length = lower.length();
+                for (int i = 0; i + 3 <= length; i++) {
+                    Long key = trigram(lower, i);
+                    PostingList postingList = builders.get(key);
+                    if (postingList == null) {
+                        postingList = new PostingList();
+                        builders.put(key, postingList);
+                    }
+                    postingList.add(id);
+                }
+                id++;
+            }
+        }
+        Map<Long, int[]> postings = new HashMap<>(builders.size() * 4 / 3 + 1);
+        for (Map.Entry<Long, PostingList> entry : builders.entrySet()) {
+            postings.put(entry.getKey(), entry.getValue().toArray());
+        }
+        return new SearchIndex(sourceNames, sourceStarts, strings, postings);
+    }
+
+    static File getIndexFile(File directory, ZipFile zipFile) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IOException(exception);
+        }
+        List<ZipEntry> entries = StringSource.listEntries(zipFile);
+        for (ZipEntry zipEntry : entries) {
+            String item = zipEntry.getName() + ":" + zipEntry.getCrc() + ":" + zipEntry.getSize() + "\n";
+            digest.update(item.getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] hash = digest.digest();
+        StringBuilder builder = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+        }
+        return new File(directory, builder.append(".idx").toString());
+    }
+
+    private static long trigram(String str, int index) {
+        return ((long) str.charAt(index) << 32)
+                | ((long) str.charAt(index + 1) << 16)
+                | str.charAt(index + 2);
+    }
+    private static int[] intersect(int[] ids1, int[] ids2) {
+        int[] results = new int[Math.min(ids1.length, ids2.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < ids1.length && j < ids2.length) {
+            int id1 = ids1[i];
+            int id2 = ids2[j];
+            if (id1 == id2) {
+                results[count++] = id1;
+                i++;
+                j++;
+            } else if (id1 < id2) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return Arrays.copyOf(results, count);
+    }
+    private static void writeVarInt(DataOutput output, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            output.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+    private static int readVarInt(DataInput input) throws IOException {
+        int result = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = input.readUnsignedByte();
+            result |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0 && shift < 35);
+        return result;
+    }
+
+    private static class PostingList {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            // ids are added in increasing order, repeated trigrams of one string are skipped
+            if (size != 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+        int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+
+    interface MatchConsumer {
+        void accept(String source, String str);
+    }
+
+    private static final int MAGIC = 0x41504b49;
+    private static final int VERSION = 1;
+}
@@ -0,0 +1,96 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.search;
+
+import com.reandroid.apkeditor.Options;
+import com.reandroid.jcommand.annotations.ChoiceArg;
+import com.reandroid.jcommand.annotations.CommandOptions;
+import com.reandroid.jcommand.annotations.OptionArg;
+import com.reandroid.jcommand.exceptions.CommandException;
+
+import java.io.File;
+import java.util.regex.PatternSyntaxException;
+
+@CommandOptions(
+        name = "search",
+        description = "search_description",
+        examples = {
+                "search_example_1",
+                "search_example_2",
+                "search_example_3"
+        })
+public class SearchOptions extends Options {
+
+    @OptionArg(name = "-s", description = "search_text")
+    public String text;
+
+    @OptionArg(name = "-regex", description = "search_regex", flag = true)
+    public boolean regex = false;
+
+    @OptionArg(name = "-ignore-case", description = "search_ignore_case", flag = true)
+    public boolean ignoreCase = false;
+
+    @OptionArg(name = "-index-dir", description = "search_index_dir")
+    public File indexDir;
+
+    @ChoiceArg(name = "-t", description = "info_print_types", values = {TYPE_TEXT, TYPE_JSON, TYPE_XML})
+    public String type = TYPE_TEXT;
+
+    public SearchOptions() {
+        super();
+    }
+
+    @Override
+    public Search newCommandExecutor() {
+        return new Search(this);
+    }
+
+    @Override
+    public void validateValues() {
+        super.validateValues();
+        if (text == null || text.length() == 0) {
+            throw new CommandException("search_missing_text");
+        }
+        if (regex) {
+            try {
+                newMatcher();
+            } catch (PatternSyntaxException exception) {
+                throw new CommandException("search_invalid_regex", exception.getDescription());
+            }
+        }
+        File dir = this.indexDir;
+        if (dir != null && dir.isFile()) {
+            throw new CommandException("path_is_file_expect_directory", dir);
+        }
+    }
+
+    @Override
+    public void validateInput(boolean isFile, boolean isDirectory) {
+        super.validateInput(true, true);
+    }
+
+    @Override
+    public void validateOutput(boolean isFile) {
+        super.validateOutput(true);
+    }
+
+    StringMatcher newMatcher() {
+        if (regex) {
+            return StringMatcher.regex(text, ignoreCase);
+        }
+        return StringMatcher.literal(text, ignoreCase);
+    }
+}
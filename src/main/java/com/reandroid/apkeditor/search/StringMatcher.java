@@ -0,0 +1,55 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.search;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+class StringMatcher {
+    private final String literal;
+    private final String lowerLiteral;
+    private final Pattern pattern;
+
+    private StringMatcher(String literal, Pattern pattern, boolean ignoreCase) {
+        this.literal = literal;
+        this.lowerLiteral = ignoreCase && literal != null ? literal.toLowerCase(Locale.ROOT) : null;
+        this.pattern = pattern;
+    }
+
+    boolean matches(String str) {
+        if (pattern != null) {
+            return pattern.matcher(str).find();
+        }
+        if (lowerLiteral != null) {
+            return str.toLowerCase(Locale.ROOT).contains(lowerLiteral);
+        }
+        return str.contains(literal);
+    }
+    /**
+     * Text every match must contain, null for regular expressions
+     * */
+    String getLiteral() {
+        return literal;
+    }
+
+    static StringMatcher literal(String text, boolean ignoreCase) {
+        return new StringMatcher(text, null, ignoreCase);
+    }
+    static StringMatcher regex(String regex, boolean ignoreCase) {
+        int flags = ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+        return new StringMatcher(null, Pattern.compile(regex, flags), ignoreCase);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.search;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads strings of the first ResStringPool chunk of resources.arsc or binary xml
+ * directly from bytes, without building table or xml document models.
+ * */
+class StringPoolReader {
+
+    static boolean isTable(byte[] bytes) {
+        return bytes.length >= 12 && readShort(bytes, 0) == TYPE_TABLE;
+    }
+    static boolean isBinaryXml(byte[] bytes) {
+        return bytes.length >= 8 && readShort(bytes, 0) == TYPE_XML;
+    }
+    /**
+     * @return strings of the pool following the file header, or null if there is no pool
+     * */
+    static String[] read(byte[] bytes) {
+        if (!isTable(bytes) && !isBinaryXml(bytes)) {
+            return null;
+        }
+        int offset = readShort(bytes, 2);
+        if (offset + 28 > bytes.length || readShort(bytes, offset) != TYPE_STRING_POOL) {
+            return null;
+        }
+        return readPool(bytes, offset);
+    }
+    private static String[] readPool(byte[] bytes, int chunk) {
+        int length = bytes.length;
+        int headerSize = readShort(bytes, chunk + 2);
+        int chunkSize = readInt(bytes, chunk + 4);
+        int count = readInt(bytes, chunk + 8);
+        boolean utf8 = (readInt(bytes, chunk + 16) & UTF8_FLAG) != 0;
+        int stringsStart = chunk + readInt(bytes, chunk + 20);
+        int end = Math.min(length, chunk + chunkSize);
+        int offsets = chunk + headerSize;
+        if (count < 0 || offsets + count * 4L > end) {
+            return new String[0];
+        }
+        String[] results = new String[count];
+        for (int i = 0; i < count; i++) {
+            int position = stringsStart + readInt(bytes, offsets + i * 4);
+            String str = null;
+            if (position >= 0 && position < end) {
+                str = utf8 ? readUtf8(bytes, position, end) : readUtf16(bytes, position, end);
+            }
+            results[i] = str != null ? str : "";
+        }
+        return results;
+    }
+    private static String readUtf8(byte[] bytes, int position, int end) {
+        // char length then byte length, each one or two bytes
+        if ((bytes[position] & 0x80) != 0) {
+            position++;
+        }
+        position++;
+        if (position >= end) {
+            return null;
+        }
+        int byteLength = bytes[position] & 0xff;
+        if ((byteLength & 0x80) != 0) {
+            if (position + 1 >= end) {
+                return null;
+            }
+            byteLength = ((byteLength & 0x7f) << 8) | (bytes[position + 1] & 0xff);
+            position++;
+        }
+        position++;
+        if (position + byteLength > end) {
+            return null;
+        }
+        return new String(bytes, position, byteLength, StandardCharsets.UTF_8);
+    }
+    private static String readUtf16(byte[] bytes, int position, int end) {
+        if (position + 2 > end) {
+            return null;
+        }
+        int charLength = readShort(bytes, position);
+        position += 2;
+        if ((charLength & 0x8000) != 0) {
+            if (position + 2 > end) {
+                return null;
+            }
+            charLength = ((charLength & 0x7fff) << 16) | readShort(bytes, position);
+            position += 2;
+        }
+        if (position + charLength * 2L > end) {
+            return null;
+        }
+        return new String(bytes, position, charLength * 2, StandardCharsets.UTF_16LE);
+    }
+    private static int readShort(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+    }
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff)
+                | (bytes[offset + 1] & 0xff) << 8
+                | (bytes[offset + 2] & 0xff) << 16
+                | (bytes[offset + 3] & 0xff) << 24;
+    }
+
+    private static final int TYPE_STRING_POOL = 0x0001;
+    private static final int TYPE_TABLE = 0x0002;
+    private static final int TYPE_XML = 0x0003;
+    private static final int UTF8_FLAG = 1 << 8;
+}
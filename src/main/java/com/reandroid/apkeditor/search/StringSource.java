@@ -0,0 +1,97 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.search;
+
+import com.reandroid.apkeditor.info.DexSummary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Strings of one string pool, a dex file, resources.arsc or a binary xml file
+ * */
+class StringSource {
+    private final String name;
+    private final String[] strings;
+
+    StringSource(String name, String[] strings) {
+        this.name = name;
+        this.strings = strings;
+    }
+
+    String getName() {
+        return name;
+    }
+    String[] getStrings() {
+        return strings;
+    }
+
+    /**
+     * Entries having a searchable string pool, sorted by name
+     * */
+    static List<ZipEntry> listEntries(ZipFile zipFile) {
+        List<ZipEntry> results = new ArrayList<>();
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry zipEntry = entries.nextElement();
+            if (!zipEntry.isDirectory() && isSearchable(zipEntry.getName())) {
+                results.add(zipEntry);
+            }
+        }
+        results.sort((entry1, entry2) -> entry1.getName().compareTo(entry2.getName()));
+        return results;
+    }
+    /**
+     * @return null if the entry content is not a recognized string pool
+     * */
+    static StringSource read(ZipFile zipFile, ZipEntry zipEntry) throws IOException {
+        String name = zipEntry.getName();
+        byte[] bytes = readBytes(zipFile, zipEntry);
+        String[] strings;
+        if (isDexFile(name)) {
+            strings = DexSummary.readStrings(bytes);
+        } else {
+            strings = StringPoolReader.read(bytes);
+        }
+        if (strings == null) {
+            return null;
+        }
+        return new StringSource(name, strings);
+    }
+    private static boolean isSearchable(String name) {
+        return isDexFile(name) || name.equals("resources.arsc") || name.endsWith(".xml");
+    }
+    private static boolean isDexFile(String name) {
+        return name.indexOf('/') < 0 && name.startsWith("classes") && name.endsWith(".dex");
+    }
+    private static byte[] readBytes(ZipFile zipFile, ZipEntry zipEntry) throws IOException {
+        try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+            byte[] bytes = new byte[(int) Math.max(0, zipEntry.getSize())];
+            int offset = 0;
+            int read;
+            while (offset < bytes.length
+                    && (read = inputStream.read(bytes, offset, bytes.length - offset)) > 0) {
+                offset += read;
+            }
+            return bytes;
+        }
+    }
+}
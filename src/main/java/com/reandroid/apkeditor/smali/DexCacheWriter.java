@@ -0,0 +1,192 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.smali;
+
+import com.reandroid.archive.ByteInputSource;
+import com.reandroid.archive.InputSource;
+import com.reandroid.json.JSONObject;
+import com.reandroid.utils.io.FileUtil;
+import com.reandroid.utils.io.IOUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Writes dex files of .cache directory. Bytes already inflated for disassembly are written
+ * on a background thread, or when source apk is given, only a reference (entry name and crc)
+ * is written and the dex is read from source apk on build. At most one write is queued,
+ * a new one waits for the previous, so queued arrays never exceed one dex.
+ * */
+class DexCacheWriter {
+
+    private final File cacheDirectory;
+    private final File sourceFile;
+    private ExecutorService executor;
+    private final List<Future<?>> pending;
+    private ZipFile sourceZip;
+
+    /**
+     * @param sourceFile apk to reference cached dex from, null to write copies
+     * */
+    DexCacheWriter(File mainDirectory, File sourceFile) {
+        this.cacheDirectory = new File(mainDirectory, SmaliUtil.CACHE_DIR);
+        this.sourceFile = sourceFile;
+        this.pending = new ArrayList<>();
+    }
+
+    boolean isReference() {
+        return sourceFile != null;
+    }
+    File toCacheFile(InputSource inputSource) {
+        return new File(cacheDirectory, inputSource.getAlias());
+    }
+    /**
+     * @param bytes inflated content of inputSource, null to read from inputSource
+     * */
+    void write(InputSource inputSource, byte[] bytes) throws IOException {
+        File file = toCacheFile(inputSource);
+        if (isReference() && writeReference(inputSource, file)) {
+            return;
+        }
+        if (bytes == null) {
+            inputSource.write(file);
+            return;
+        }
+        FileUtil.ensureParentDirectory(file);
+        awaitPending();
+        pending.add(getExecutor().submit(() -> {
+            Files.write(file.toPath(), bytes);
+            return null;
+        }));
+    }
+    /**
+     * Waits for pending writes, must be called before cache files are read
+     * */
+    void finish() throws IOException {
+        try {
+            awaitPending();
+        } finally {
+            pending.clear();
+            if (executor != null) {
+                executor.shutdown();
+                executor = null;
+            }
+            if (sourceZip != null) {
+                sourceZip.close();
+                sourceZip = null;
+            }
+        }
+    }
+    private void awaitPending() throws IOException {
+        try {
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } catch (InterruptedException exception) {
+            throw new InterruptedIOException(exception.getMessage());
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+        pending.clear();
+    }
+    private boolean writeReference(InputSource inputSource, File file) throws IOException {
+        ZipFile zipFile = getSourceZip();
+        ZipEntry zipEntry = zipFile.getEntry(inputSource.getName());
+        if (zipEntry == null || zipEntry.getCrc() != inputSource.getCrc()) {
+            // not the same bytes as source apk entry, e.g. merged from splits
+            return false;
+        }
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put(NAME_source, sourceFile.getAbsolutePath());
+        jsonObject.put(NAME_name, zipEntry.getName());
+        jsonObject.put(NAME_crc, Long.toHexString(zipEntry.getCrc()));
+        File refFile = toReferenceFile(file);
+        FileUtil.ensureParentDirectory(refFile);
+        Files.write(refFile.toPath(), jsonObject.toString(1).getBytes(StandardCharsets.UTF_8));
+        return true;
+    }
+    private ZipFile getSourceZip() throws IOException {
+        if (sourceZip == null) {
+            sourceZip = new ZipFile(sourceFile);
+        }
+        return sourceZip;
+    }
+    private ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "dex-cache-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    static File toReferenceFile(File cacheFile) {
+        return new File(cacheFile.getParentFile(), cacheFile.getName() + REFERENCE_EXTENSION);
+    }
+    /**
+     * Reads dex referenced by refFile from its source apk
+     * @return null if source apk is missing or changed
+     * */
+    static InputSource readReference(File refFile, String name) throws IOException {
+        JSONObject jsonObject = new JSONObject(IOUtil.readUtf8(FileUtil.inputStream(refFile)));
+        File source = new File(jsonObject.getString(NAME_source));
+        if (!source.isFile()) {
+            return null;
+        }
+        try (ZipFile zipFile = new ZipFile(source)) {
+            ZipEntry zipEntry = zipFile.getEntry(jsonObject.getString(NAME_name));
+            if (zipEntry == null || zipEntry.getCrc()
+                    != Long.parseLong(jsonObject.getString(NAME_crc), 16)) {
+                return null;
+            }
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(
+                    (int) Math.max(zipEntry.getSize(), 32));
+            try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = inputStream.read(buffer)) > 0) {
+                    outputStream.write(buffer, 0, read);
+                }
+            }
+            return new ByteInputSource(outputStream.toByteArray(), name);
+        }
+    }
+
+    static final String REFERENCE_EXTENSION = ".ref";
+
+    private static final String NAME_source = "source";
+    private static final String NAME_name = "name";
+    private static final String NAME_crc = "crc";
+}
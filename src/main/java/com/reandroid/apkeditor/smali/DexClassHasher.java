@@ -0,0 +1,118 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.smali;
+
+import org.jf.baksmali.Adaptors.ClassDefinition;
+import org.jf.baksmali.BaksmaliOptions;
+import org.jf.baksmali.formatter.BaksmaliWriter;
+import org.jf.dexlib2.Opcodes;
+import org.jf.dexlib2.VersionMap;
+import org.jf.dexlib2.dexbacked.DexBackedClassDef;
+import org.jf.dexlib2.dexbacked.DexBackedDexFile;
+import org.jf.dexlib2.dexbacked.raw.HeaderItem;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Computes content hash of each class in a dex file. Classes are hashed on their smali
+ * form without debug info, thus the hash does not depend on pool indexes or layout and
+ * stays the same when other classes of the dex change or the class moves to another dex.
+ * */
+public class DexClassHasher {
+
+    private final BaksmaliOptions options;
+
+    public DexClassHasher() {
+        BaksmaliOptions options = new BaksmaliOptions();
+        options.sequentialLabels = true;
+        options.debugInfo = false;
+        options.localsDirective = true;
+        this.options = options;
+    }
+
+    /**
+     * @return map of class type descriptor to hash
+     * */
+    public Map<String, String> hashClasses(byte[] dexBytes) throws IOException {
+        int api = VersionMap.mapDexVersionToApi(HeaderItem.getVersion(dexBytes, 0));
+        DexBackedDexFile dexFile = new DexBackedDexFile(Opcodes.forApi(api), dexBytes);
+        MessageDigest digest = newDigest();
+        DigestWriter digestWriter = new DigestWriter(digest);
+        BaksmaliWriter baksmaliWriter = new BaksmaliWriter(digestWriter);
+        Base64.Encoder encoder = Base64.getEncoder();
+        Map<String, String> results = new HashMap<>();
+        for (DexBackedClassDef classDef : dexFile.getClasses()) {
+            ClassDefinition classDefinition = new ClassDefinition(options, classDef);
+            classDefinition.writeTo(baksmaliWriter);
+            baksmaliWriter.flush();
+            results.put(classDef.getType(), encoder.encodeToString(digest.digest()));
+        }
+        return results;
+    }
+
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IOException(exception);
+        }
+    }
+
+    private static class DigestWriter extends Writer {
+        private final MessageDigest digest;
+
+        DigestWriter(MessageDigest digest) {
+            this.digest = digest;
+        }
+        @Override
+        public void write(int c) {
+            digest.update((byte) (c >>> 8));
+            digest.update((byte) c);
+        }
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            MessageDigest digest = this.digest;
+            int end = offset + length;
+            for (int i = offset; i < end; i++) {
+                char c = chars[i];
+                digest.update((byte) (c >>> 8));
+                digest.update((byte) c);
+            }
+        }
+        @Override
+        public void write(String str, int offset, int length) {
+            MessageDigest digest = this.digest;
+            int end = offset + length;
+            for (int i = offset; i < end; i++) {
+                char c = str.charAt(i);
+                digest.update((byte) (c >>> 8));
+                digest.update((byte) c);
+            }
+        }
+        @Override
+        public void flush() {
+        }
+        @Override
+        public void close() {
+        }
+    }
+}
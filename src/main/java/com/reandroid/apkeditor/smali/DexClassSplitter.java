@@ -0,0 +1,125 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.smali;
+
+import org.jf.dexlib2.Opcodes;
+import org.jf.dexlib2.VersionMap;
+import org.jf.dexlib2.dexbacked.DexBackedClassDef;
+import org.jf.dexlib2.dexbacked.DexBackedDexFile;
+import org.jf.dexlib2.dexbacked.raw.HeaderItem;
+import org.jf.dexlib2.writer.io.FileDataStore;
+import org.jf.dexlib2.writer.io.MemoryDataStore;
+import org.jf.dexlib2.writer.pool.DexPool;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Splits a dex by class type name into the part to be decoded and the part kept in
+ * binary, and merges them back on build. Only class_defs are read to decide, a dex
+ * is rewritten only when its classes fall on both sides.
+ * */
+class DexClassSplitter {
+
+    private final byte[] included;
+    private final byte[] excluded;
+
+    private DexClassSplitter(byte[] included, byte[] excluded) {
+        this.included = included;
+        this.excluded = excluded;
+    }
+
+    /**
+     * @return dex bytes of accepted classes, null if none accepted
+     * */
+    byte[] getIncluded() {
+        return included;
+    }
+    /**
+     * @return dex bytes of rejected classes, null if all accepted
+     * */
+    byte[] getExcluded() {
+        return excluded;
+    }
+
+    static DexClassSplitter split(byte[] dex, Predicate<String> filter) throws IOException {
+        DexBackedDexFile dexFile = read(dex);
+        List<DexBackedClassDef> included = new ArrayList<>();
+        List<DexBackedClassDef> excluded = new ArrayList<>();
+        for (DexBackedClassDef classDef : dexFile.getClasses()) {
+            if (filter.test(classDef.getType())) {
+                included.add(classDef);
+            } else {
+                excluded.add(classDef);
+            }
+        }
+        if (excluded.isEmpty()) {
+            return new DexClassSplitter(dex, null);
+        }
+        if (included.isEmpty()) {
+            return new DexClassSplitter(null, dex);
+        }
+        return new DexClassSplitter(write(dexFile.getOpcodes(), included),
+                write(dexFile.getOpcodes(), excluded));
+    }
+    /**
+     * Writes classes of built plus classes of passthrough not defined in built
+     * */
+    static void merge(byte[] built, File passthrough, File output) throws IOException {
+        DexBackedDexFile builtDex = read(built);
+        DexBackedDexFile passthroughDex = read(Files.readAllBytes(passthrough.toPath()));
+        Opcodes opcodes = builtDex.getOpcodes();
+        if (passthroughDex.getOpcodes().api > opcodes.api) {
+            opcodes = passthroughDex.getOpcodes();
+        }
+        DexPool dexPool = new DexPool(opcodes);
+        Set<String> types = new HashSet<>();
+        for (DexBackedClassDef classDef : builtDex.getClasses()) {
+            types.add(classDef.getType());
+            dexPool.internClass(classDef);
+        }
+        for (DexBackedClassDef classDef : passthroughDex.getClasses()) {
+            if (!types.contains(classDef.getType())) {
+                dexPool.internClass(classDef);
+            }
+        }
+        File dir = output.getParentFile();
+        if (dir != null && !dir.exists()) {
+            dir.mkdirs();
+        }
+        dexPool.writeTo(new FileDataStore(output));
+    }
+
+    private static byte[] write(Opcodes opcodes, List<DexBackedClassDef> classDefs) throws IOException {
+        DexPool dexPool = new DexPool(opcodes);
+        for (DexBackedClassDef classDef : classDefs) {
+            dexPool.internClass(classDef);
+        }
+        MemoryDataStore dataStore = new MemoryDataStore();
+        dexPool.writeTo(dataStore);
+        return dataStore.getData();
+    }
+    private static DexBackedDexFile read(byte[] dex) {
+        int api = VersionMap.mapDexVersionToApi(HeaderItem.getVersion(dex, 0));
+        return new DexBackedDexFile(Opcodes.forApi(api), dex);
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.smali;
+
+import com.reandroid.apk.DexFileInputSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Groups dex files into batches that are loaded together, each batch fits the heap budget.
+ * Parsed sizes are estimated from id counts and data size of dex header, plus the raw dex
+ * bytes which stay in memory while their batch decodes. Only the first 0x70 bytes of each
+ * dex are inflated.
+ * */
+class DexLoadPlanner {
+
+    private final long budget;
+    private final List<List<DexFileInputSource>> batches;
+    private final List<Long> batchEstimates;
+    private long minimalEstimate;
+    private long totalEstimate;
+
+    DexLoadPlanner(long budget) {
+        this.budget = budget;
+        this.batches = new ArrayList<>();
+        this.batchEstimates = new ArrayList<>();
+    }
+
+    void plan(List<DexFileInputSource> dexList) throws IOException {
+        List<DexFileInputSource> batch = new ArrayList<>();
+        long batchEstimate = 0;
+        for (DexFileInputSource inputSource : dexList) {
+            Header header = Header.read(inputSource);
+            long estimate = header.estimateFull();
+            minimalEstimate += header.estimateMinimal();
+            totalEstimate += estimate;
+            if (!batch.isEmpty() && batchEstimate + estimate > budget) {
+                addBatch(batch, batchEstimate);
+                batch = new ArrayList<>();
+                batchEstimate = 0;
+            }
+            batch.add(inputSource);
+            batchEstimate += estimate;
+        }
+        if (!batch.isEmpty()) {
+            addBatch(batch, batchEstimate);
+        }
+    }
+    private void addBatch(List<DexFileInputSource> batch, long estimate) {
+        batches.add(batch);
+        batchEstimates.add(estimate);
+    }
+
+    List<List<DexFileInputSource>> getBatches() {
+        return batches;
+    }
+    /**
+     * True if minimal structures of all dex (for class/method hierarchy comments) fit
+     * the budget together with the largest batch
+     * */
+    boolean canLoadMinimal() {
+        return minimalEstimate + getLargestBatchEstimate() <= budget;
+    }
+    private long getLargestBatchEstimate() {
+        long result = 0;
+        for (long estimate : batchEstimates) {
+            if (estimate > result) {
+                result = estimate;
+            }
+        }
+        return result;
+    }
+    String describe() {
+        String strategy;
+        int count = batches.size();
+        if (count <= 1) {
+            strategy = "all at once";
+        } else if (count == countDexFiles()) {
+            strategy = "one at a time";
+        } else {
+            strategy = count + " batches";
+        }
+        StringBuilder builder = new StringBuilder();
+        builder.append("Dex load plan: ").append(strategy)
+                .append(", estimated=").append(toMegaBytes(totalEstimate))
+                .append(", budget=").append(toMegaBytes(budget));
+        if (getLargestBatchEstimate() > budget) {
+            builder.append(" (largest dex exceeds budget)");
+        }
+        return builder.toString();
+    }
+    private int countDexFiles() {
+        int result = 0;
+        for (List<DexFileInputSource> batch : batches) {
+            result += batch.size();
+        }
+        return result;
+    }
+
+    /**
+     * @param megaBytes budget given by user, zero or negative for automatic
+     * */
+    static long computeBudget(int megaBytes) {
+        if (megaBytes > 0) {
+            return megaBytes * MEGA_BYTE;
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        long available = runtime.maxMemory() - used;
+        return (long) (available * AUTO_BUDGET_RATIO);
+    }
+    private static String toMegaBytes(long bytes) {
+        return (bytes / MEGA_BYTE) + "MB";
+    }
+
+    static class Header {
+        final int stringCount;
+        final int typeCount;
+        final int protoCount;
+        final int fieldCount;
+        final int methodCount;
+        final int classCount;
+        final int dataSize;
+        final int fileSize;
+
+        Header(byte[] bytes) {
+            this.fileSize = readInt(bytes, 0x20);
+            this.stringCount = readInt(bytes, 0x38);
+            this.typeCount = readInt(bytes, 0x40);
+            this.protoCount = readInt(bytes, 0x48);
+            this.fieldCount = readInt(bytes, 0x50);
+            this.methodCount = readInt(bytes, 0x58);
+            this.classCount = readInt(bytes, 0x60);
+            this.dataSize = readInt(bytes, 0x68);
+        }
+        long estimateMinimal() {
+            return COST_STRING * stringCount
+                    + COST_TYPE * typeCount
+                    + COST_PROTO * protoCount
+                    + COST_FIELD * fieldCount
+                    + COST_METHOD * methodCount
+                    + COST_CLASS_MINIMAL * classCount;
+        }
+        long estimateFull() {
+            return estimateMinimal()
+                    + (COST_CLASS - COST_CLASS_MINIMAL) * classCount
+                    + COST_DATA_BYTE * dataSize
+                    + (fileSize & 0xffffffffL);
+        }
+        static Header read(DexFileInputSource inputSource) throws IOException {
+            byte[] bytes = new byte[HEADER_SIZE];
+            try (InputStream inputStream = inputSource.openStream()) {
+                int offset = 0;
+                while (offset < HEADER_SIZE) {
+                    int read = inputStream.read(bytes, offset, HEADER_SIZE - offset);
+                    if (read < 0) {
+                        throw new IOException("Invalid dex header: " + inputSource.getAlias());
+                    }
+                    offset += read;
+                }
+            }
+            return new Header(bytes);
+        }
+        private static int readInt(byte[] bytes, int offset) {
+            return (bytes[offset] & 0xff)
+                    | (bytes[offset + 1] & 0xff) << 8
+                    | (bytes[offset + 2] & 0xff) << 16
+                    | (bytes[offset + 3] & 0xff) << 24;
+        }
+    }
+
+    private static final int HEADER_SIZE = 0x70;
+    private static final long MEGA_BYTE = 1024L * 1024L;
+    private static final double AUTO_BUDGET_RATIO = 0.6;
+
+    // rough retained bytes per item of internal dex model, measured on typical apps
+    private static final long COST_STRING = 96;
+    private static final long COST_TYPE = 40;
+    private static final long COST_PROTO = 64;
+    private static final long COST_FIELD = 56;
+    private static final long COST_METHOD = 64;
+    private static final long COST_CLASS_MINIMAL = 128;
+    private static final long COST_CLASS = 320;
+    private static final long COST_DATA_BYTE = 6;
+}
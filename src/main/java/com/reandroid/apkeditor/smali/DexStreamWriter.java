@@ -0,0 +1,84 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.smali;
+
+import org.jf.baksmali.Adaptors.ClassDefinition;
+import org.jf.baksmali.BaksmaliOptions;
+import org.jf.baksmali.formatter.BaksmaliWriter;
+import org.jf.dexlib2.dexbacked.DexBackedClassDef;
+import org.jf.dexlib2.dexbacked.DexBackedDexFile;
+import org.jf.dexlib2.extra.DexMarker;
+import org.jf.util.ClassFileNameHandler;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes smali of a dex one class at a time in class_def order. Baksmali.disassembleDexFile
+ * sorts a copy of all class defs and queues a task per class, here each class def is read
+ * from the dex buffer by index, written and closed before the next one is read, so nothing
+ * but the dex bytes stays reachable between classes.
+ * */
+class DexStreamWriter {
+
+    private final BaksmaliOptions options;
+
+    DexStreamWriter(BaksmaliOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * @return number of classes written
+     * */
+    int write(DexBackedDexFile dexFile, File dir) throws IOException {
+        if (options.dumpMarkers) {
+            DexMarker.writeMarkers(dexFile.getMarkers(), new File(dir, DexMarker.FILE_NAME));
+        }
+        ClassFileNameHandler fileNameHandler = new ClassFileNameHandler(dir, ".smali");
+        List<DexBackedClassDef> classSection = dexFile.getClassSection();
+        int size = classSection.size();
+        for (int i = 0; i < size; i++) {
+            writeClass(classSection.get(i), fileNameHandler);
+        }
+        return size;
+    }
+    private void writeClass(DexBackedClassDef classDef, ClassFileNameHandler fileNameHandler) throws IOException {
+        String type = classDef.getType();
+        if (type.length() < 3 || type.charAt(0) != 'L' || type.charAt(type.length() - 1) != ';') {
+            throw new IOException("Invalid class type: " + type);
+        }
+        File file = fileNameHandler.getUniqueFilenameForClass(type);
+        File parent = file.getParentFile();
+        if (!parent.exists() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Failed to create directory: " + parent);
+        }
+        ClassDefinition classDefinition = new ClassDefinition(options, classDef);
+        String classContext = options.implicitReferences ? type : null;
+        try (BaksmaliWriter writer = new BaksmaliWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8)), classContext)) {
+            writer.setOptions(options);
+            classDefinition.writeTo(writer);
+        } catch (IOException | RuntimeException exception) {
+            file.delete();
+            throw new IOException("Failed to write class: " + type, exception);
+        }
+    }
+}
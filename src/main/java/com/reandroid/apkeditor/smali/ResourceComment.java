@@ -15,6 +15,7 @@
  */
 package com.reandroid.apkeditor.smali;
 
+import com.reandroid.apkeditor.utils.IntObjectMap;
 import com.reandroid.arsc.chunk.PackageBlock;
 import com.reandroid.arsc.chunk.TableBlock;
 import com.reandroid.arsc.model.ResourceEntry;
@@ -23,19 +24,25 @@ import com.reandroid.arsc.value.ResValue;
 import com.reandroid.arsc.value.ValueType;
 import org.jf.baksmali.CommentProvider;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * Resource id comments are indexed per package id on first lookup. Each index is built
+ * in one pass over all declared entries of the package and published without locking,
+ * after that lookups are read only and allocation free. A package id not found on first
+ * lookup gets an empty index, it is not searched again.
+ * */
 public class ResourceComment extends CommentProvider {
 
     private final TableBlock tableBlock;
     private final PackageBlock packageBlock;
-    private final Map<Integer, String> mCommentCache;
+    private final AtomicReferenceArray<IntObjectMap<String>> mPackageIndexes;
 
     public ResourceComment(TableBlock tableBlock) {
         this.tableBlock = tableBlock;
         this.packageBlock = tableBlock.pickOne();
-        this.mCommentCache = new HashMap<>();
+        this.mPackageIndexes = new AtomicReferenceArray<>(256);
     }
 
     @Override
@@ -43,24 +50,55 @@ public class ResourceComment extends CommentProvider {
         if (!PackageBlock.isResourceId(resourceId)) {
             return null;
         }
-        synchronized (this) {
-            String comment = mCommentCache.get(resourceId);
-            if (comment != null) {
-                return comment;
-            }
-            comment = buildComment(resourceId);
-            if (comment != null) {
-                mCommentCache.put(resourceId, comment);
-            }
-            return comment;
+        int packageId = (resourceId >>> 24) & 0xff;
+        IntObjectMap<String> index = mPackageIndexes.get(packageId);
+        if (index == null) {
+            index = loadIndex(packageId, resourceId);
         }
+        return index.get(resourceId);
     }
-    private String buildComment(int resourceId) {
+    private IntObjectMap<String> loadIndex(int packageId, int resourceId) {
+        PackageBlock packageBlock = findPackage(packageId, resourceId);
+        IntObjectMap<String> index;
+        if (packageBlock == null) {
+            index = EMPTY_INDEX;
+        } else {
+            index = buildIndex(packageBlock);
+        }
+        if (!mPackageIndexes.compareAndSet(packageId, null, index)) {
+            index = mPackageIndexes.get(packageId);
+        }
+        return index;
+    }
+    private PackageBlock findPackage(int packageId, int resourceId) {
+        for (PackageBlock packageBlock : tableBlock.listPackages()) {
+            if (packageBlock.getId() == packageId) {
+                return packageBlock;
+            }
+        }
+        // frameworks
         ResourceEntry resourceEntry = tableBlock.getResource(resourceId);
-        if (resourceEntry == null || !resourceEntry.isDeclared()) {
+        if (resourceEntry == null) {
             return null;
         }
-
+        return resourceEntry.getPackageBlock();
+    }
+    private IntObjectMap<String> buildIndex(PackageBlock packageBlock) {
+        IntObjectMap<String> index = new IntObjectMap<>();
+        Iterator<ResourceEntry> iterator = packageBlock.getResources();
+        while (iterator.hasNext()) {
+            ResourceEntry resourceEntry = iterator.next();
+            if (!resourceEntry.isDeclared()) {
+                continue;
+            }
+            String comment = buildComment(resourceEntry);
+            if (comment != null) {
+                index.put(resourceEntry.getResourceId(), comment);
+            }
+        }
+        return index;
+    }
+    private String buildComment(ResourceEntry resourceEntry) {
         String ref = resourceEntry
                 .buildReference(packageBlock, ValueType.REFERENCE);
 
@@ -120,4 +158,6 @@ public class ResourceComment extends CommentProvider {
         }
         return str;
     }
+
+    private static final IntObjectMap<String> EMPTY_INDEX = new IntObjectMap<>();
 }
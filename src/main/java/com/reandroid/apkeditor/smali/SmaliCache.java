@@ -0,0 +1,279 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.smali;
+
+import com.reandroid.archive.InputSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content addressed store of decoded smali shared by all output directories. An entry is
+ * keyed by sha-256 of dex bytes plus a context string of everything else that changes the
+ * smali (options, resource table), and holds the smali directory of the dex and its
+ * .cache copy.
+ * <br/>
+ * Entries are written to a temporary directory then renamed, concurrent decoders never see
+ * a partial entry and the first writer wins. An entry records its number of smali files,
+ * a restore copying fewer (entry dropped by another decoder meanwhile) is a miss.
+ * <br/>
+ * With link, smali files are restored as read-only hard links. Files of an entry carry a
+ * fixed modification time, an entry with a file changed through a link (in-place edit,
+ * permissions ignored e.g. by root) is detected on restore and dropped. The dex is always
+ * copied, the builder rewrites it in place.
+ * */
+class SmaliCache {
+
+    private final File directory;
+    private boolean link;
+    private String context;
+
+    SmaliCache(File directory, boolean link) {
+        this.directory = directory;
+        this.link = link;
+        this.context = "";
+    }
+
+    void setContext(String context) {
+        this.context = context;
+    }
+    String computeKey(InputSource inputSource) throws IOException {
+        MessageDigest digest = newDigest();
+        digest.update(context.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+        inputSource.write(new DigestOutputStream(digest));
+        return toHex(digest.digest());
+    }
+    /**
+     * @param dexCache destination of .cache dex, null if not wanted
+     * @return false if key is not in cache
+     * */
+    boolean restore(String key, File smaliDir, File dexCache) throws IOException {
+        File entry = toEntry(key);
+        File smali = new File(entry, NAME_SMALI);
+        if (!smali.isDirectory()) {
+            return false;
+        }
+        if (link && !isIntact(smali)) {
+            // detach first, concurrent decoders never link from a half deleted entry
+            File stale = new File(directory, TEMP_PREFIX + key + "-" + System.nanoTime());
+            Files.move(entry.toPath(), stale.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            deleteTree(stale);
+            return false;
+        }
+        try {
+            int count = readCount(entry);
+            if (count < 0 || copyTree(smali, smaliDir, link) != count) {
+                deleteTree(smaliDir);
+                return false;
+            }
+            File dex = new File(entry, NAME_DEX);
+            if (dexCache != null && dex.isFile()) {
+                copyFile(dex, dexCache, false);
+            }
+        } catch (IOException exception) {
+            // entry moved away while copying
+            deleteTree(smaliDir);
+            return false;
+        }
+        entry.setLastModified(System.currentTimeMillis());
+        return true;
+    }
+    boolean hasDex(String key) {
+        return new File(toEntry(key), NAME_DEX).isFile();
+    }
+    /**
+     * @param dexCache .cache dex written by decoder, null or missing if dex was modified
+     * @param source dex to store when .cache holds only a reference, otherwise null
+     * */
+    void store(String key, File smaliDir, File dexCache, InputSource source) throws IOException {
+        File entry = toEntry(key);
+        if (entry.isDirectory()) {
+            return;
+        }
+        File temp = new File(directory, TEMP_PREFIX + key + "-" + System.nanoTime());
+        try {
+            File smali = new File(temp, NAME_SMALI);
+            int count = copyTree(smaliDir, smali, false);
+            stamp(smali);
+            Files.write(new File(temp, NAME_COUNT).toPath(),
+                    Integer.toString(count).getBytes(StandardCharsets.UTF_8));
+            if (dexCache != null && dexCache.isFile()) {
+                copyFile(dexCache, new File(temp, NAME_DEX), false);
+            } else if (source != null) {
+                source.write(new File(temp, NAME_DEX));
+            }
+            File parent = entry.getParentFile();
+            if (!parent.exists()) {
+                parent.mkdirs();
+            }
+            Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exception) {
+            if (!entry.isDirectory()) {
+                throw exception;
+            }
+            // stored by another decoder meanwhile
+        } finally {
+            deleteTree(temp);
+        }
+    }
+
+    private File toEntry(String key) {
+        return new File(new File(directory, key.substring(0, 2)), key);
+    }
+    /**
+     * @return number of smali files recorded in entry, -1 if missing or unreadable
+     * */
+    private static int readCount(File entry) {
+        try {
+            byte[] bytes = Files.readAllBytes(new File(entry, NAME_COUNT).toPath());
+            return Integer.parseInt(new String(bytes, StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException exception) {
+            return -1;
+        }
+    }
+    private static boolean isIntact(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return true;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                if (!isIntact(file)) {
+                    return false;
+                }
+            } else if (file.lastModified() != STORED_TIME) {
+                return false;
+            }
+        }
+        return true;
+    }
+    private static void stamp(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                stamp(file);
+            } else {
+                file.setLastModified(STORED_TIME);
+            }
+        }
+    }
+    /**
+     * @return number of files copied
+     * */
+    private int copyTree(File source, File destination, boolean linkFiles) throws IOException {
+        File[] files = source.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        if (!destination.exists()) {
+            destination.mkdirs();
+        }
+        int count = 0;
+        for (File file : files) {
+            File target = new File(destination, file.getName());
+            if (file.isDirectory()) {
+                count += copyTree(file, target, linkFiles);
+            } else {
+                copyFile(file, target, linkFiles);
+                count++;
+            }
+        }
+        return count;
+    }
+    private void copyFile(File source, File destination, boolean linkFiles) throws IOException {
+        File parent = destination.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        if (linkFiles && link) {
+            try {
+                Files.deleteIfExists(destination.toPath());
+                Files.createLink(destination.toPath(), source.toPath());
+                destination.setWritable(false, false);
+                return;
+            } catch (IOException | UnsupportedOperationException exception) {
+                // e.g. cache on another file system, copy from now on
+                this.link = false;
+            }
+        }
+        Files.copy(source.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    private static void deleteTree(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                deleteTree(child);
+            }
+        }
+        file.delete();
+    }
+
+    static String hash(InputSource inputSource) throws IOException {
+        MessageDigest digest = newDigest();
+        inputSource.write(new DigestOutputStream(digest));
+        return toHex(digest.digest());
+    }
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IOException(exception);
+        }
+    }
+    private static String toHex(byte[] hash) {
+        StringBuilder builder = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+
+    private static class DigestOutputStream extends OutputStream {
+
+        private final MessageDigest digest;
+
+        DigestOutputStream(MessageDigest digest) {
+            this.digest = digest;
+        }
+        @Override
+        public void write(int b) {
+            digest.update((byte) b);
+        }
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            digest.update(bytes, offset, length);
+        }
+    }
+
+    static final int VERSION = 2;
+
+    private static final long STORED_TIME = 946684800000L;
+    private static final String NAME_SMALI = "smali";
+    private static final String NAME_DEX = "classes.dex";
+    private static final String NAME_COUNT = "count";
+    private static final String TEMP_PREFIX = ".tmp-";
+}
@@ -19,6 +19,7 @@ import com.reandroid.apk.APKLogger;
 import com.reandroid.apk.ApkModuleEncoder;
 import com.reandroid.apk.DexEncoder;
 import com.reandroid.apkeditor.compile.BuildOptions;
+import com.reandroid.apkeditor.utils.PassthroughFiles;
 import com.reandroid.archive.FileInputSource;
 import com.reandroid.archive.InputSource;
 import com.reandroid.arsc.chunk.xml.AndroidManifestBlock;
@@ -29,10 +30,13 @@ import org.jf.dexlib2.extra.DexMarker;
 import org.jf.smali.Smali;
 import org.jf.smali.SmaliOptions;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 public class SmaliCompiler implements DexEncoder {
 
@@ -47,7 +51,8 @@ public class SmaliCompiler implements DexEncoder {
     @Override
     public List<InputSource> buildDexFiles(ApkModuleEncoder apkModuleEncoder, File mainDir) throws IOException {
         File smaliDir = new File(mainDir, "smali");
-        if(!smaliDir.isDirectory()){
+        Map<Integer, File> passthroughMap = mapPassthroughDexFiles(mainDir);
+        if(!smaliDir.isDirectory() && passthroughMap.isEmpty()){
             return null;
         }
         AndroidManifestBlock manifestBlock =  apkModuleEncoder.getApkModule().getAndroidManifest();
@@ -65,12 +70,54 @@ public class SmaliCompiler implements DexEncoder {
             i++;
             String progress = "(" + StringsUtil.formatNumber(i, size) + "/" + size + ") ";
             InputSource inputSource = build(progress, classesDir);
+            File passthrough = passthroughMap.remove(SmaliUtil.getDexNumber(classesDir.getName()));
+            if(passthrough != null){
+                inputSource = mergePassthrough(classesDir, inputSource, passthrough);
+            }
             results.add(inputSource);
         }
+        for(File passthrough : passthroughMap.values()){
+            logMessage("Passthrough: " + passthrough.getName());
+            results.add(new FileInputSource(passthrough, passthrough.getName()));
+        }
+        return results;
+    }
+    /**
+     * @param built result of build, a .cache dex or read from source apk by reference
+     * */
+    private InputSource mergePassthrough(File classesDir, InputSource built, File passthrough) throws IOException {
+        File dexCacheFile = toDexCache(classesDir);
+        String name = dexCacheFile.getName();
+        File merged = new File(new File(dexCacheFile.getParentFile(), PassthroughFiles.DIRECTORY_NAME),
+                name);
+        logMessage("Merge passthrough classes: " + passthrough.getName());
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        built.write(outputStream);
+        DexClassSplitter.merge(outputStream.toByteArray(), passthrough, merged);
+        return new FileInputSource(merged, name);
+    }
+    private Map<Integer, File> mapPassthroughDexFiles(File mainDir){
+        Map<Integer, File> results = new TreeMap<>();
+        for(File file : PassthroughFiles.listDexFiles(mainDir)){
+            int number = SmaliUtil.getDexNumber(file.getName());
+            if(number >= 0){
+                results.put(number, file);
+            }
+        }
         return results;
     }
     private InputSource build(String progress, File classesDir) throws IOException {
         File dexCacheFile = toDexCache(classesDir);
+        File refFile = DexCacheWriter.toReferenceFile(dexCacheFile);
+        if(!buildOptions.noCache && !dexCacheFile.isFile() && refFile.isFile()
+                && !isModified(classesDir, refFile.lastModified())){
+            InputSource inputSource = DexCacheWriter.readReference(refFile, dexCacheFile.getName());
+            if(inputSource != null){
+                logMessage(progress + "Cached (source apk): " + dexCacheFile.getName());
+                return inputSource;
+            }
+            logMessage(progress + "Source apk changed: " + refFile.getName());
+        }
         if(isModified(classesDir, dexCacheFile)){
             return build(progress, classesDir, dexCacheFile);
         }else {
@@ -19,8 +19,14 @@ import com.reandroid.apk.APKLogger;
 import com.reandroid.apk.ApkModule;
 import com.reandroid.apk.DexDecoder;
 import com.reandroid.apk.DexFileInputSource;
+import com.reandroid.apkeditor.decompile.DecodeFilter;
 import com.reandroid.apkeditor.decompile.DecompileOptions;
+import com.reandroid.apkeditor.utils.PassthroughFiles;
+import com.reandroid.archive.ByteInputSource;
+import com.reandroid.archive.InputSource;
+import com.reandroid.archive.ZipEntryMap;
 import com.reandroid.arsc.chunk.TableBlock;
+import com.reandroid.dex.id.TypeId;
 import com.reandroid.dex.key.TypeKey;
 import com.reandroid.dex.model.DexClassRepository;
 import com.reandroid.dex.model.DexDirectory;
@@ -30,6 +36,7 @@ import com.reandroid.dex.sections.MapList;
 import com.reandroid.dex.sections.SectionType;
 import com.reandroid.dex.smali.SmaliWriterSetting;
 import com.reandroid.dex.smali.formatters.ResourceIdComment;
+import com.reandroid.utils.io.FileUtil;
 import org.jf.baksmali.Baksmali;
 import org.jf.baksmali.BaksmaliOptions;
 import org.jf.dexlib2.Opcodes;
@@ -37,85 +44,253 @@ import org.jf.dexlib2.VersionMap;
 import org.jf.dexlib2.dexbacked.DexBackedDexFile;
 import org.jf.dexlib2.dexbacked.raw.HeaderItem;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Predicate;
 
 public class SmaliDecompiler implements DexDecoder {
 
     private final TableBlock tableBlock;
     private final DecompileOptions decompileOptions;
+    private final DecodeFilter decodeFilter;
     private ResourceComment mComment;
     private SmaliWriterSetting smaliWriterSetting;
     private Opcodes mCurrentOpcodes;
     private APKLogger apkLogger;
     private boolean mDexForCommentLoaded;
+    private DexCacheWriter dexCacheWriter;
+    private ApkModule mCommentModule;
+    private DexDirectory mCommentDirectory;
+    private Set<String> skippedDexFiles;
+    private DexLoadPlanner mDexLoadPlanner;
 
     public SmaliDecompiler(TableBlock tableBlock, DecompileOptions decompileOptions) {
         this.tableBlock = tableBlock;
         this.decompileOptions = decompileOptions;
+        this.decodeFilter = decompileOptions.getDecodeFilter();
     }
 
     @Override
     public void decodeDex(DexFileInputSource inputSource, File mainDir) throws IOException {
-        if (DecompileOptions.DEX_LIB_INTERNAL.equals(decompileOptions.dexLib)) {
-            disassembleWithInternalDexLib(inputSource, mainDir);
+        if (hasSkippedDexFiles() && skippedDexFiles.contains(inputSource.getAlias())) {
+            logMessage("Unchanged: " + inputSource.getAlias());
+            return;
+        }
+        byte[] bytes = null;
+        if (decodeFilter.hasClassFilter()) {
+            bytes = splitPassthroughClasses(inputSource, mainDir);
+            if (bytes == null) {
+                return;
+            }
+        }
+        if (decompileOptions.dexStream) {
+            disassembleStreaming(inputSource, bytes, mainDir);
+        } else if (DecompileOptions.DEX_LIB_INTERNAL.equals(decompileOptions.dexLib)) {
+            disassembleWithInternalDexLib(inputSource, bytes, mainDir);
         } else {
-            disassembleWithJesusFrekeLib(inputSource, mainDir);
+            disassembleWithJesusFrekeLib(inputSource, bytes, mainDir);
         }
     }
     @Override
     public void decodeDex(ApkModule apkModule, File mainDirectory) throws IOException {
-        if (!DecompileOptions.DEX_LIB_INTERNAL.equals(decompileOptions.dexLib)) {
+        applySkipScope(apkModule);
+        SmaliCache smaliCache = getSmaliCache(apkModule);
+        try {
+            if (smaliCache != null) {
+                decodeDexCached(apkModule, mainDirectory, smaliCache);
+            } else {
+                decodeDexFiles(apkModule, mainDirectory);
+            }
+        } finally {
+            finishDexCache();
+        }
+    }
+    private void decodeDexCached(ApkModule apkModule, File mainDirectory, SmaliCache smaliCache) throws IOException {
+        Set<String> previous = this.skippedDexFiles;
+        Set<String> skipped = new HashSet<>();
+        if (previous != null) {
+            skipped.addAll(previous);
+        }
+        Map<DexFileInputSource, String> missed = new LinkedHashMap<>();
+        for (DexFileInputSource inputSource : apkModule.listDexFiles()) {
+            if (skipped.contains(inputSource.getAlias())) {
+                continue;
+            }
+            String key = smaliCache.computeKey(inputSource);
+            File dexCache = null;
+            if (!decompileOptions.noCache && !decompileOptions.dexCacheRef) {
+                dexCache = toDexCacheFile(inputSource, mainDirectory);
+            }
+            if (smaliCache.restore(key, toOutDir(inputSource, mainDirectory), dexCache)) {
+                logMessage("Cached: " + inputSource.getAlias());
+                skipped.add(inputSource.getAlias());
+                if (decompileOptions.dexCacheRef && smaliCache.hasDex(key)) {
+                    writeDexCache(inputSource, null, mainDirectory);
+                }
+            } else {
+                missed.put(inputSource, key);
+            }
+        }
+        if (missed.isEmpty()) {
+            return;
+        }
+        this.skippedDexFiles = skipped;
+        if (!skipped.isEmpty() && isHierarchyCommented()
+                && SCOPE_ALL.equals(getHierarchyScope(apkModule.listDexFiles()))) {
+            // remaining dex are decoded one by one, keep hierarchy of all as restored ones have
+            deferCommentDex(apkModule);
+        }
+        try {
+            decodeDexFiles(apkModule, mainDirectory);
+        } finally {
+            this.skippedDexFiles = previous;
+            closeCommentDex();
+        }
+        finishDexCache();
+        for (Map.Entry<DexFileInputSource, String> entry : missed.entrySet()) {
+            DexFileInputSource inputSource = entry.getKey();
+            File dexCache = toDexCacheFile(inputSource, mainDirectory);
+            InputSource source = null;
+            if (DexCacheWriter.toReferenceFile(dexCache).isFile()) {
+                source = inputSource;
+            }
+            try {
+                smaliCache.store(entry.getValue(), toOutDir(inputSource, mainDirectory),
+                        dexCache, source);
+            } catch (IOException exception) {
+                logMessage("Failed to store in global cache: " + inputSource.getAlias()
+                        + ", " + exception.getMessage());
+            }
+        }
+    }
+    private void decodeDexFiles(ApkModule apkModule, File mainDirectory) throws IOException {
+        if (!DecompileOptions.DEX_LIB_INTERNAL.equals(decompileOptions.dexLib)
+                || decompileOptions.dexStream || decodeFilter.hasClassFilter() || hasSkippedDexFiles()) {
             DexDecoder.super.decodeDex(apkModule, mainDirectory);
             return;
         }
-        boolean dexChanged = false;
         DexDirectory directory = (DexDirectory) apkModule.getTag(DexDirectory.class);
-        if (directory == null) {
-            int size = apkModule.listDexFiles().size();
-            logMessage("Dex files: " + size);
+        if (directory != null) {
+            writeSmali(directory, apkModule.listDexFiles(), null, mainDirectory, false);
+            return;
+        }
+        List<DexFileInputSource> dexList = apkModule.listDexFiles();
+        int size = dexList.size();
+        logMessage("Dex files: " + size);
+        if (decompileOptions.loadDex > 0) {
             if (size > decompileOptions.loadDex) {
-                DexDirectory dexDirectory = null;
                 if (size < decompileOptions.loadDex * 5) {
-                    dexDirectory = loadMinimalDexForComment(apkModule);
+                    deferCommentDex(apkModule);
                 }
-                DexDecoder.super.decodeDex(apkModule, mainDirectory);
-                if (dexDirectory != null) {
-                    dexDirectory.close();
+                try {
+                    DexDecoder.super.decodeDex(apkModule, mainDirectory);
+                } finally {
+                    closeCommentDex();
                 }
                 return;
             }
-            logMessage("Loading full dex files ...");
-            Predicate<SectionType<?>> filter;
-            if (decompileOptions.noDexDebug) {
-                filter = sectionType -> sectionType != SectionType.DEBUG_INFO;
-            } else {
-                filter = null;
+            loadAndWriteSmali(apkModule.getZipEntryMap(), dexList, mainDirectory);
+            return;
+        }
+        DexLoadPlanner planner = getDexLoadPlanner(dexList);
+        logMessage(planner.describe());
+        List<List<DexFileInputSource>> batches = planner.getBatches();
+        if (batches.size() <= 1) {
+            loadAndWriteSmali(apkModule.getZipEntryMap(), dexList, mainDirectory);
+            return;
+        }
+        try {
+            if (planner.canLoadMinimal()) {
+                // before any batch is resident, the plan budgets minimal plus one batch
+                loadCommentDex(apkModule);
+            }
+            for (List<DexFileInputSource> batch : batches) {
+                if (batch.size() == 1) {
+                    decodeDex(batch.get(0), mainDirectory);
+                    continue;
+                }
+                ZipEntryMap zipEntryMap = new ZipEntryMap();
+                for (DexFileInputSource inputSource : batch) {
+                    zipEntryMap.add(inputSource);
+                }
+                loadAndWriteSmali(zipEntryMap, batch, mainDirectory);
+                // bytes of this batch must not be queued while the next one loads
+                finishDexCache();
             }
-            directory = DexDirectory.fromZip(apkModule.getZipEntryMap(), filter);
-            if (decompileOptions.noDexDebug && isDebugRemoved(directory)) {
-                dexChanged = true;
+        } finally {
+            closeCommentDex();
+        }
+    }
+    private void loadAndWriteSmali(ZipEntryMap zipEntryMap, List<DexFileInputSource> dexList,
+                                   File mainDirectory) throws IOException {
+        logMessage("Loading full dex files: " + dexList.size());
+        Predicate<SectionType<?>> filter;
+        if (decompileOptions.noDexDebug) {
+            filter = sectionType -> sectionType != SectionType.DEBUG_INFO;
+        } else {
+            filter = null;
+        }
+        Map<DexFileInputSource, byte[]> dexBytes = null;
+        if (!decompileOptions.noCache && !decompileOptions.dexCacheRef) {
+            // inflate once for both model and cache
+            zipEntryMap = new ZipEntryMap();
+            dexBytes = new LinkedHashMap<>();
+            boolean unchanged = !decompileOptions.noDexDebug
+                    && decompileOptions.removeAnnotations.isEmpty();
+            for (DexFileInputSource inputSource : dexList) {
+                byte[] bytes = readDexBytes(inputSource);
+                zipEntryMap.add(new ByteInputSource(bytes, inputSource.getName()));
+                if (unchanged) {
+                    // written while smali is being written
+                    writeDexCache(inputSource, bytes, mainDirectory);
+                } else {
+                    dexBytes.put(inputSource, bytes);
+                }
             }
         }
-
+        DexDirectory directory = DexDirectory.fromZip(zipEntryMap, filter);
+        boolean dexChanged = decompileOptions.noDexDebug && isDebugRemoved(directory);
+        writeSmali(directory, dexList, dexBytes, mainDirectory, dexChanged);
+    }
+    /**
+     * @param dexBytes inflated dex not written to .cache yet, null to write all from dexList
+     * */
+    private void writeSmali(DexDirectory directory, List<DexFileInputSource> dexList,
+                            Map<DexFileInputSource, byte[]> dexBytes,
+                            File mainDirectory, boolean dexChanged) throws IOException {
         dexChanged = removeAnnotations(directory) || dexChanged;
 
         File smali = toSmaliRoot(mainDirectory);
         SmaliWriterSetting setting = getSmaliWriterSetting(directory);
         directory.writeSmali(setting, smali, this::logBaksmaliDex);
-        setting.clearClassComments();
-        setting.clearMethodComments();
+        if (!mDexForCommentLoaded) {
+            setting.clearClassComments();
+            setting.clearMethodComments();
+        }
         directory.close();
 
         if (!dexChanged && !decompileOptions.noCache) {
-            List<DexFileInputSource> dexList = apkModule.listDexFiles();
-            for (DexFileInputSource inputSource : dexList) {
-                writeDexCache(inputSource, mainDirectory);
+            if (dexBytes == null) {
+                for (DexFileInputSource inputSource : dexList) {
+                    writeDexCache(inputSource, null, mainDirectory);
+                }
+            } else {
+                for (Map.Entry<DexFileInputSource, byte[]> entry : dexBytes.entrySet()) {
+                    writeDexCache(entry.getKey(), entry.getValue(), mainDirectory);
+                }
             }
         }
     }
@@ -127,6 +302,85 @@ public class SmaliDecompiler implements DexDecoder {
         return true;
     }
 
+    /**
+     * Planned once per apk, the auto budget depends on free heap and the global cache
+     * context must describe the same plan the decoder follows
+     * */
+    private DexLoadPlanner getDexLoadPlanner(List<DexFileInputSource> dexList) throws IOException {
+        DexLoadPlanner planner = this.mDexLoadPlanner;
+        if (planner == null) {
+            planner = new DexLoadPlanner(
+                    DexLoadPlanner.computeBudget(decompileOptions.dexHeapBudget));
+            planner.plan(dexList);
+            this.mDexLoadPlanner = planner;
+        }
+        return planner;
+    }
+    private boolean isHierarchyCommented() {
+        return DecompileOptions.DEX_LIB_INTERNAL.equals(decompileOptions.dexLib)
+                && !decompileOptions.dexStream
+                && decompileOptions.containsCommentLevel(DecompileOptions.COMMENT_LEVEL_DETAIL);
+    }
+    /**
+     * Dex files class/method hierarchy comments of a dex are resolved from, as decided by
+     * -load-dex or the load plan
+     * @return SCOPE_ALL, SCOPE_OWN or SCOPE_BATCH
+     * */
+    private String getHierarchyScope(List<DexFileInputSource> dexList) throws IOException {
+        int loadDex = decompileOptions.loadDex;
+        if (loadDex > 0) {
+            if (dexList.size() < loadDex * 5) {
+                return SCOPE_ALL;
+            }
+            return SCOPE_OWN;
+        }
+        DexLoadPlanner planner = getDexLoadPlanner(dexList);
+        if (planner.getBatches().size() <= 1 || planner.canLoadMinimal()) {
+            return SCOPE_ALL;
+        }
+        return SCOPE_BATCH;
+    }
+    /**
+     * Marks basic structures of all dex to be loaded for class/method hierarchy comments,
+     * loading happens on first smali write that needs comments
+     * */
+    private void deferCommentDex(ApkModule apkModule) {
+        if (decompileOptions.containsCommentLevel(DecompileOptions.COMMENT_LEVEL_DETAIL)) {
+            this.mCommentModule = apkModule;
+        }
+    }
+    /**
+     * Loads basic structures of all dex for class/method hierarchy comments right away
+     * */
+    private void loadCommentDex(ApkModule apkModule) throws IOException {
+        this.mCommentModule = null;
+        this.mCommentDirectory = loadMinimalDexForComment(apkModule);
+    }
+    private void loadDeferredCommentDex() throws IOException {
+        ApkModule apkModule = this.mCommentModule;
+        if (apkModule != null) {
+            this.mCommentModule = null;
+            this.mCommentDirectory = loadMinimalDexForComment(apkModule);
+        }
+    }
+    /**
+     * Releases comment structures, comments of setting hold references to them
+     * */
+    private void closeCommentDex() {
+        this.mCommentModule = null;
+        DexDirectory dexDirectory = this.mCommentDirectory;
+        if (dexDirectory == null) {
+            return;
+        }
+        this.mCommentDirectory = null;
+        mDexForCommentLoaded = false;
+        SmaliWriterSetting setting = this.smaliWriterSetting;
+        if (setting != null) {
+            setting.clearClassComments();
+            setting.clearMethodComments();
+        }
+        dexDirectory.close();
+    }
     private DexDirectory loadMinimalDexForComment(ApkModule apkModule) throws IOException {
         if (!decompileOptions.containsCommentLevel(DecompileOptions.COMMENT_LEVEL_DETAIL)) {
             return null;
@@ -139,7 +393,26 @@ public class SmaliDecompiler implements DexDecoder {
         mDexForCommentLoaded = true;
         return dexDirectory;
     }
-    private void disassembleWithJesusFrekeLib(DexFileInputSource inputSource, File mainDir) throws IOException {
+    /**
+     * Writes classes rejected by class filter to passthrough directory
+     * @return dex bytes of accepted classes, null if none accepted
+     * */
+    private byte[] splitPassthroughClasses(DexFileInputSource inputSource, File mainDir) throws IOException {
+        DexClassSplitter splitter = DexClassSplitter.split(readDexBytes(inputSource),
+                decodeFilter::acceptClass);
+        byte[] excluded = splitter.getExcluded();
+        if (excluded != null) {
+            File file = PassthroughFiles.toDexFile(mainDir, inputSource.getAlias());
+            FileUtil.ensureParentDirectory(file);
+            Files.write(file.toPath(), excluded);
+        }
+        byte[] included = splitter.getIncluded();
+        if (included == null) {
+            logMessage("Passthrough: " + inputSource.getAlias());
+        }
+        return included;
+    }
+    private void disassembleWithJesusFrekeLib(DexFileInputSource inputSource, byte[] bytes, File mainDir) throws IOException {
         logMessage("Baksmali: " + inputSource.getAlias());
         File dir = toOutDir(inputSource, mainDir);
         BaksmaliOptions options = new BaksmaliOptions();
@@ -149,18 +422,58 @@ public class SmaliDecompiler implements DexDecoder {
         options.debugInfo = !decompileOptions.noDexDebug;
         options.dumpMarkers = decompileOptions.dexMarkers;
         options.setCommentProvider(getComment());
-        DexBackedDexFile dexFile = getInputDexFile(inputSource, options);
+        byte[] sourceBytes = null;
+        if (bytes == null) {
+            bytes = readDexBytes(inputSource);
+            sourceBytes = bytes;
+        }
+        DexBackedDexFile dexFile = getInputDexFile(bytes, options);
         Baksmali.disassembleDexFile(dexFile, dir, 1, options);
-        writeDexCache(inputSource, mainDir);
+        writeDexCache(inputSource, sourceBytes, mainDir);
+    }
+    /**
+     * Writes smali class by class on the calling thread, see DexStreamWriter. Dex bytes are
+     * the only full copy on heap, dexlib2 resolves items of each class from them on demand.
+     * */
+    private void disassembleStreaming(DexFileInputSource inputSource, byte[] bytes, File mainDir) throws IOException {
+        File dir = toOutDir(inputSource, mainDir);
+        BaksmaliOptions options = new BaksmaliOptions();
+        options.localsDirective = true;
+        options.sequentialLabels = true;
+        options.skipDuplicateLineNumbers = true;
+        options.debugInfo = !decompileOptions.noDexDebug;
+        options.dumpMarkers = decompileOptions.dexMarkers;
+        options.setCommentProvider(getComment());
+        byte[] sourceBytes = null;
+        if (bytes == null) {
+            bytes = readDexBytes(inputSource);
+            sourceBytes = bytes;
+        }
+        DexBackedDexFile dexFile = getInputDexFile(bytes, options);
+        int count = new DexStreamWriter(options).write(dexFile, dir);
+        logMessage("Baksmali (stream): <" + count + "> " + inputSource.getAlias());
+        writeDexCache(inputSource, sourceBytes, mainDir);
     }
-    private void disassembleWithInternalDexLib(DexFileInputSource inputSource, File mainDir) throws IOException {
+    private void disassembleWithInternalDexLib(DexFileInputSource inputSource, byte[] bytes, File mainDir) throws IOException {
         Predicate<SectionType<?>> filter;
         if (decompileOptions.noDexDebug) {
             filter = sectionType -> sectionType != SectionType.DEBUG_INFO;
         } else {
             filter = null;
         }
-        DexFile dexFile = DexFile.read(inputSource.openStream(), filter);
+        byte[] sourceBytes = null;
+        if (bytes == null && !decompileOptions.noCache && !decompileOptions.dexCacheRef) {
+            // inflate once for both model and cache
+            bytes = readDexBytes(inputSource);
+            sourceBytes = bytes;
+        }
+        InputStream inputStream;
+        if (bytes != null) {
+            inputStream = new ByteArrayInputStream(bytes);
+        } else {
+            inputStream = inputSource.openStream();
+        }
+        DexFile dexFile = DexFile.read(inputStream, filter);
         dexFile.setSimpleName(inputSource.getAlias());
         logBaksmaliDex(dexFile);
         boolean dexChanged = false;
@@ -178,22 +491,73 @@ public class SmaliDecompiler implements DexDecoder {
         }
         dexFile.close();
         if (!dexChanged) {
-            writeDexCache(inputSource, mainDir);
+            writeDexCache(inputSource, sourceBytes, mainDir);
         }
     }
+    /**
+     * Skips requested types absent from type_ids, found by one sweep of type_ids. Each present
+     * type still costs one repository wide sweep, the library removes one type per call.
+     * */
     private boolean removeAnnotations(DexClassRepository classRepository) {
+        List<String> typeNames = decompileOptions.removeAnnotations;
+        if (typeNames.isEmpty()) {
+            return false;
+        }
+        Map<TypeKey, String> requested = new LinkedHashMap<>();
+        for (String typeName : typeNames) {
+            requested.put(TypeKey.parse(typeName), typeName);
+        }
+        Set<TypeKey> present = new HashSet<>();
+        Iterator<TypeId> iterator = classRepository.getItems(SectionType.TYPE_ID);
+        while (iterator.hasNext() && present.size() < requested.size()) {
+            TypeKey typeKey = iterator.next().getKey();
+            if (requested.containsKey(typeKey)) {
+                present.add(typeKey);
+            }
+        }
         boolean result = false;
-        for (String typeName : decompileOptions.removeAnnotations) {
-            result = classRepository.removeAnnotations(TypeKey.parse(typeName)) || result;
+        for (Map.Entry<TypeKey, String> entry : requested.entrySet()) {
+            TypeKey typeKey = entry.getKey();
+            if (!present.contains(typeKey)) {
+                continue;
+            }
+            if (classRepository.removeAnnotations(typeKey)) {
+                result = true;
+                logMessage("Removed annotation: " + entry.getValue());
+            }
         }
         return result;
     }
-    private void writeDexCache(DexFileInputSource inputSource, File mainDir) throws IOException {
+    /**
+     * @param bytes already inflated dex of inputSource, null to read from inputSource
+     * */
+    private void writeDexCache(DexFileInputSource inputSource, byte[] bytes, File mainDir) throws IOException {
         if (!decompileOptions.noCache) {
-            File cache = new File(mainDir, SmaliUtil.CACHE_DIR);
-            cache = new File(cache, inputSource.getAlias());
-            inputSource.write(cache);
+            getDexCacheWriter(mainDir).write(inputSource, bytes);
+        }
+    }
+    private DexCacheWriter getDexCacheWriter(File mainDir) {
+        DexCacheWriter dexCacheWriter = this.dexCacheWriter;
+        if (dexCacheWriter == null) {
+            File sourceFile = null;
+            if (decompileOptions.dexCacheRef && decompileOptions.inputFile.isFile()) {
+                sourceFile = decompileOptions.inputFile;
+            }
+            dexCacheWriter = new DexCacheWriter(mainDir, sourceFile);
+            this.dexCacheWriter = dexCacheWriter;
         }
+        return dexCacheWriter;
+    }
+    private void finishDexCache() throws IOException {
+        DexCacheWriter dexCacheWriter = this.dexCacheWriter;
+        if (dexCacheWriter != null) {
+            this.dexCacheWriter = null;
+            dexCacheWriter.finish();
+        }
+    }
+    private File toDexCacheFile(DexFileInputSource inputSource, File mainDir) {
+        File cache = new File(mainDir, SmaliUtil.CACHE_DIR);
+        return new File(cache, inputSource.getAlias());
     }
     private File toOutDir(DexFileInputSource inputSource, File mainDir) {
         String name = "classes";
@@ -212,11 +576,57 @@ public class SmaliDecompiler implements DexDecoder {
         return new File(mainDir, DexDecoder.SMALI_DIRECTORY_NAME);
     }
 
-    private DexBackedDexFile getInputDexFile(DexFileInputSource inputSource, BaksmaliOptions options) throws IOException {
+    private byte[] readBytes(DexFileInputSource inputSource) throws IOException {
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         inputSource.write(outputStream);
         outputStream.close();
-        byte[] bytes = outputStream.toByteArray();
+        return outputStream.toByteArray();
+    }
+    /**
+     * Reads dex into an array sized from file_size of its header, avoids the growing
+     * copies of ByteArrayOutputStream on large dex files
+     * */
+    private byte[] readDexBytes(DexFileInputSource inputSource) throws IOException {
+        byte[] bytes;
+        try (InputStream inputStream = inputSource.openStream()) {
+            byte[] header = new byte[HeaderItem.ITEM_SIZE];
+            if (readFully(inputStream, header, 0, header.length) != header.length) {
+                throw new IOException("Invalid dex header: " + inputSource.getAlias());
+            }
+            int offset = HeaderItem.FILE_SIZE_OFFSET;
+            int fileSize = (header[offset] & 0xff)
+                    | (header[offset + 1] & 0xff) << 8
+                    | (header[offset + 2] & 0xff) << 16
+                    | (header[offset + 3] & 0xff) << 24;
+            if (fileSize < header.length) {
+                throw new IOException("Invalid dex file size: " + inputSource.getAlias());
+            }
+            bytes = new byte[fileSize];
+            System.arraycopy(header, 0, bytes, 0, header.length);
+            int length = fileSize - header.length;
+            if (readFully(inputStream, bytes, header.length, length) != length
+                    || inputStream.read() != -1) {
+                bytes = null;
+            }
+        }
+        if (bytes == null) {
+            // file_size does not match the entry, fall back to reading as is
+            bytes = readBytes(inputSource);
+        }
+        return bytes;
+    }
+    private static int readFully(InputStream inputStream, byte[] bytes, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = inputStream.read(bytes, offset + total, length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+    private DexBackedDexFile getInputDexFile(byte[] bytes, BaksmaliOptions options) {
         int version = HeaderItem.getVersion(bytes, 0);
         int api = VersionMap.mapDexVersionToApi(version);
         options.apiLevel = api;
@@ -227,6 +637,56 @@ public class SmaliDecompiler implements DexDecoder {
         }
         return new DexBackedDexFile(opcodes, bytes);
     }
+    /**
+     * Returns null if global cache is not set or not applicable, the cache context covers
+     * all options that change smali output
+     * */
+    private SmaliCache getSmaliCache(ApkModule apkModule) throws IOException {
+        File directory = decompileOptions.globalCache;
+        if (directory == null || decodeFilter.hasClassFilter()) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        builder.append("version=").append(SmaliCache.VERSION);
+        builder.append("\nlib=").append(decompileOptions.dexLib);
+        builder.append("\nstream=").append(decompileOptions.dexStream);
+        builder.append("\nno-dex-debug=").append(decompileOptions.noDexDebug);
+        builder.append("\ndex-markers=").append(decompileOptions.dexMarkers);
+        builder.append("\nsmali-registers=").append(decompileOptions.smaliRegisters);
+        builder.append("\ncomment-level=").append(decompileOptions.commentLevel);
+        builder.append("\nlocale=").append(Locale.getDefault());
+        List<String> annotations = new ArrayList<>(decompileOptions.removeAnnotations);
+        Collections.sort(annotations);
+        for (String annotation : annotations) {
+            builder.append("\nremove-annotation=").append(annotation);
+        }
+        // resource comments resolve framework ids
+        builder.append("\nframework-version=").append(decompileOptions.frameworkVersion);
+        for (File file : decompileOptions.getFrameworks()) {
+            builder.append("\nframework=").append(file.getAbsolutePath())
+                    .append(':').append(file.length())
+                    .append(':').append(file.lastModified());
+        }
+        InputSource table = apkModule.getZipEntryMap().getInputSource(TableBlock.FILE_NAME);
+        if (table != null) {
+            builder.append("\ntable=").append(SmaliCache.hash(table));
+        }
+        if (isHierarchyCommented()) {
+            String scope = getHierarchyScope(apkModule.listDexFiles());
+            if (SCOPE_BATCH.equals(scope)) {
+                logMessage("Global cache not applied: hierarchy comments are split by dex batches");
+                return null;
+            }
+            builder.append("\ndex-load=").append(scope);
+            // class/method hierarchy comments depend on all dex files
+            for (DexFileInputSource inputSource : apkModule.listDexFiles()) {
+                builder.append("\ndex=").append(SmaliCache.hash(inputSource));
+            }
+        }
+        SmaliCache smaliCache = new SmaliCache(directory, decompileOptions.globalCacheLink);
+        smaliCache.setContext(builder.toString());
+        return smaliCache;
+    }
     public ResourceComment getComment() {
         ResourceComment comment = this.mComment;
         if (comment == null) {
@@ -238,7 +698,8 @@ public class SmaliDecompiler implements DexDecoder {
         return mComment;
     }
 
-    private SmaliWriterSetting getSmaliWriterSetting(DexClassRepository classRepository) {
+    private SmaliWriterSetting getSmaliWriterSetting(DexClassRepository classRepository) throws IOException {
+        loadDeferredCommentDex();
         SmaliWriterSetting setting = getSmaliWriterSetting();
         if (!mDexForCommentLoaded) {
             setting.clearClassComments();
@@ -297,6 +758,40 @@ public class SmaliDecompiler implements DexDecoder {
         return false;
     }
 
+    /**
+     * Dex files (by alias) to leave undecoded, e.g. unchanged since last decode
+     * */
+    /**
+     * Class/method hierarchy comments resolved across dex files change when any of them
+     * changes, unchanged dex are skipped only if all dex are unchanged. Otherwise skipped
+     * set is cleared, the caller sees all dex as decoded.
+     * */
+    private void applySkipScope(ApkModule apkModule) throws IOException {
+        if (!hasSkippedDexFiles() || !isHierarchyCommented()) {
+            return;
+        }
+        List<DexFileInputSource> dexList = apkModule.listDexFiles();
+        if (SCOPE_OWN.equals(getHierarchyScope(dexList))) {
+            return;
+        }
+        for (DexFileInputSource inputSource : dexList) {
+            if (!skippedDexFiles.contains(inputSource.getAlias())) {
+                logMessage("Hierarchy comments span all dex, decoding all");
+                skippedDexFiles.clear();
+                return;
+            }
+        }
+    }
+    /**
+     * @param skippedDexFiles unchanged dex, the set is cleared if they must be decoded
+     * */
+    public void setSkippedDexFiles(Set<String> skippedDexFiles) {
+        this.skippedDexFiles = skippedDexFiles;
+    }
+    private boolean hasSkippedDexFiles() {
+        Set<String> skippedDexFiles = this.skippedDexFiles;
+        return skippedDexFiles != null && !skippedDexFiles.isEmpty();
+    }
     public void setApkLogger(APKLogger apkLogger) {
         this.apkLogger = apkLogger;
     }
@@ -306,4 +801,8 @@ public class SmaliDecompiler implements DexDecoder {
             apkLogger.logMessage(msg);
         }
     }
+
+    private static final String SCOPE_ALL = "all";
+    private static final String SCOPE_OWN = "own";
+    private static final String SCOPE_BATCH = "batch";
 }
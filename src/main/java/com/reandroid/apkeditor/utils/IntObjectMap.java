@@ -0,0 +1,233 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Open-addressing (linear probing) hash map with primitive int keys.
+ * Lookups never allocate; null values are not allowed.
+ * Not thread safe for writes, once fully populated it can be shared
+ * between threads as long as it is safely published.
+ * */
+public class IntObjectMap<T> {
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private int shift;
+
+    public IntObjectMap() {
+        this(16);
+    }
+    public IntObjectMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    public boolean containsKey(int key) {
+        return indexOf(key) >= 0;
+    }
+    @SuppressWarnings("unchecked")
+    public T get(int key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        return (T) values[i];
+    }
+    @SuppressWarnings("unchecked")
+    public T put(int key, T value) {
+        if (value == null) {
+            throw new NullPointerException("Null value for key: " + key);
+        }
+        int[] keys = this.keys;
+        Object[] values = this.values;
+        int mask = this.mask;
+        int i = hash(key);
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                T previous = (T) values[i];
+                values[i] = value;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size ++;
+        if (size > (mask >>> 1) + (mask >>> 2)) {
+            rehash(values.length << 1);
+        }
+        return null;
+    }
+    @SuppressWarnings("unchecked")
+    public T remove(int key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        T previous = (T) values[i];
+        removeAt(i);
+        return previous;
+    }
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        Object[] values = this.values;
+        int length = values.length;
+        for (int i = 0; i < length; i++) {
+            values[i] = null;
+        }
+        size = 0;
+    }
+    /**
+     * Returns keys in ascending order
+     * */
+    public int[] keys() {
+        int[] results = new int[size];
+        int[] keys = this.keys;
+        Object[] values = this.values;
+        int length = values.length;
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (values[i] != null) {
+                results[count] = keys[i];
+                count ++;
+            }
+        }
+        Arrays.sort(results);
+        return results;
+    }
+    /**
+     * Returns values in ascending order of their keys
+     * */
+    public List<T> values() {
+        int[] keys = keys();
+        List<T> results = new ArrayList<>(keys.length);
+        for (int key : keys) {
+            results.add(get(key));
+        }
+        return results;
+    }
+    public void forEach(EntryConsumer<? super T> consumer) {
+        int[] keys = keys();
+        for (int key : keys) {
+            consumer.accept(key, get(key));
+        }
+    }
+
+    private int indexOf(int key) {
+        int[] keys = this.keys;
+        Object[] values = this.values;
+        int mask = this.mask;
+        int i = hash(key);
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+    private void removeAt(int i) {
+        int[] keys = this.keys;
+        Object[] values = this.values;
+        int mask = this.mask;
+        values[i] = null;
+        size --;
+        // backward shift deletion, keeps probe sequences unbroken
+        int hole = i;
+        int j = (i + 1) & mask;
+        while (values[j] != null) {
+            int home = hash(keys[j]);
+            boolean move;
+            if (hole <= j) {
+                move = home <= hole || home > j;
+            } else {
+                move = home <= hole && home > j;
+            }
+            if (move) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                values[j] = null;
+                hole = j;
+            }
+            j = (j + 1) & mask;
+        }
+    }
+    private void rehash(int capacity) {
+        int[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+        allocate(capacity);
+        int[] keys = this.keys;
+        Object[] values = this.values;
+        int mask = this.mask;
+        int length = oldValues.length;
+        for (int k = 0; k < length; k++) {
+            Object value = oldValues[k];
+            if (value == null) {
+                continue;
+            }
+            int key = oldKeys[k];
+            int i = hash(key);
+            while (values[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+    }
+    private void allocate(int capacity) {
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        this.shift = 32 - Integer.numberOfTrailingZeros(capacity);
+    }
+    private int hash(int key) {
+        return (key * 0x9E3779B9) >>> shift;
+    }
+
+    @Override
+    public String toString() {
+        return "size = " + size();
+    }
+
+    static int tableSizeFor(int expectedSize) {
+        if (expectedSize < 4) {
+            expectedSize = 4;
+        }
+        long required = ((long) expectedSize * 4 + 2) / 3;
+        int capacity = 8;
+        while (capacity < required && capacity < (1 << 30)) {
+            capacity = capacity << 1;
+        }
+        return capacity;
+    }
+
+    public interface EntryConsumer<T> {
+        void accept(int key, T value);
+    }
+}
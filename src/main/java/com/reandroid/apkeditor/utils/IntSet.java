@@ -0,0 +1,142 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing (linear probing) hash set of primitive ints, see {@link IntObjectMap}
+ * */
+public class IntSet {
+
+    private int[] elements;
+    private int size;
+    private int mask;
+    private int shift;
+    private boolean containsZero;
+
+    public IntSet() {
+        this(16);
+    }
+    public IntSet(int expectedSize) {
+        allocate(IntObjectMap.tableSizeFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    public boolean contains(int value) {
+        if (value == 0) {
+            return containsZero;
+        }
+        int[] elements = this.elements;
+        int mask = this.mask;
+        int i = hash(value);
+        int element;
+        while ((element = elements[i]) != 0) {
+            if (element == value) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+    public boolean add(int value) {
+        if (value == 0) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size ++;
+            return true;
+        }
+        int[] elements = this.elements;
+        int mask = this.mask;
+        int i = hash(value);
+        int element;
+        while ((element = elements[i]) != 0) {
+            if (element == value) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        elements[i] = value;
+        size ++;
+        if (size > (mask >>> 1) + (mask >>> 2)) {
+            rehash(elements.length << 1);
+        }
+        return true;
+    }
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        Arrays.fill(elements, 0);
+        containsZero = false;
+        size = 0;
+    }
+    /**
+     * Returns elements in ascending order
+     * */
+    public int[] toArray() {
+        int[] results = new int[size];
+        int count = 0;
+        if (containsZero) {
+            count ++;
+        }
+        for (int element : elements) {
+            if (element != 0) {
+                results[count] = element;
+                count ++;
+            }
+        }
+        Arrays.sort(results);
+        return results;
+    }
+
+    private void rehash(int capacity) {
+        int[] old = this.elements;
+        allocate(capacity);
+        int[] elements = this.elements;
+        int mask = this.mask;
+        for (int element : old) {
+            if (element == 0) {
+                continue;
+            }
+            int i = hash(element);
+            while (elements[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            elements[i] = element;
+        }
+    }
+    private void allocate(int capacity) {
+        this.elements = new int[capacity];
+        this.mask = capacity - 1;
+        this.shift = 32 - Integer.numberOfTrailingZeros(capacity);
+    }
+    private int hash(int value) {
+        return (value * 0x9E3779B9) >>> shift;
+    }
+
+    @Override
+    public String toString() {
+        return "size = " + size();
+    }
+}
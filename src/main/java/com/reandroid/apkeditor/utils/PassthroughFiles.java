@@ -0,0 +1,116 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.utils;
+
+import com.reandroid.apk.ApkModule;
+import com.reandroid.archive.ArchiveFile;
+import com.reandroid.archive.InputSource;
+import com.reandroid.archive.writer.ApkFileWriter;
+import com.reandroid.utils.io.FileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Files of a decoded directory that were not decoded. The entries are copied as stored in
+ * the source apk (compressed, not inflated) to .passthrough/files.zip and added back to the
+ * apk on build, the decoded directory does not depend on the source apk.
+ * */
+public class PassthroughFiles {
+
+    private final File sourceFile;
+    private final Set<String> names;
+
+    private PassthroughFiles(File sourceFile, Set<String> names) {
+        this.sourceFile = sourceFile;
+        this.names = names;
+    }
+
+    public int size() {
+        return names.size();
+    }
+    public void save(File mainDirectory) throws IOException {
+        if (names.isEmpty()) {
+            return;
+        }
+        File file = getFile(mainDirectory);
+        FileUtil.ensureParentDirectory(file);
+        ArchiveFile archive = new ArchiveFile(sourceFile);
+        try {
+            List<InputSource> sources = new ArrayList<>();
+            for (InputSource inputSource : archive.getInputSources()) {
+                if (names.contains(inputSource.getAlias())) {
+                    sources.add(inputSource);
+                }
+            }
+            ApkFileWriter writer = new ApkFileWriter(file, sources.toArray(new InputSource[0]));
+            writer.write();
+            writer.close();
+        } finally {
+            archive.close();
+        }
+    }
+
+    public static PassthroughFiles create(File sourceFile, Collection<String> names) {
+        return new PassthroughFiles(sourceFile, new HashSet<>(names));
+    }
+    /**
+     * Adds the entries saved in mainDirectory to apkModule, the returned archive must be
+     * closed after apkModule is written.
+     * @return null if mainDirectory has no passthrough files
+     * */
+    public static ArchiveFile restore(File mainDirectory, ApkModule apkModule) throws IOException {
+        File file = getFile(mainDirectory);
+        if (!file.isFile()) {
+            return null;
+        }
+        ArchiveFile archive = new ArchiveFile(file);
+        for (InputSource inputSource : archive.getInputSources()) {
+            apkModule.add(inputSource);
+        }
+        return archive;
+    }
+    /**
+     * Dex files holding the classes excluded from smali, to be merged on build
+     * */
+    public static List<File> listDexFiles(File mainDirectory) {
+        List<File> results = new ArrayList<>();
+        File[] files = new File(mainDirectory, DIRECTORY_NAME).listFiles();
+        if (files == null) {
+            return results;
+        }
+        for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(".dex")) {
+                results.add(file);
+            }
+        }
+        return results;
+    }
+    public static File toDexFile(File mainDirectory, String dexName) {
+        return new File(new File(mainDirectory, DIRECTORY_NAME), dexName);
+    }
+    private static File getFile(File mainDirectory) {
+        return new File(new File(mainDirectory, DIRECTORY_NAME), FILE_NAME);
+    }
+
+    public static final String DIRECTORY_NAME = ".passthrough";
+    private static final String FILE_NAME = "files.zip";
+}
@@ -0,0 +1,194 @@
+/*
+ *  Copyright (C) 2022 github.com/REAndroid
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.reandroid.apkeditor.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs independent tasks on a fixed number of threads and hands the results
+ * back to the calling thread in input order. Only a bounded window of tasks is
+ * in flight at any time, so results of large inputs never pile up in memory.
+ * With a single thread everything runs inline on the calling thread.
+ * */
+public class WorkerPool {
+
+    private static final int WINDOW_PER_THREAD = 4;
+
+    private final int threads;
+
+    public WorkerPool(int threads) {
+        if (threads < 1) {
+            threads = 1;
+        }
+        this.threads = threads;
+    }
+    public WorkerPool() {
+        this(defaultThreads());
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Applies worker to every input and passes each result to consumer in the
+     * same order as inputs, consumer is always called on the calling thread.
+     * Processing stops as soon as consumer returns false, pending tasks are cancelled.
+     * */
+    public <I, R> void process(Iterator<? extends I> inputs,
+                               Worker<? super I, ? extends R> worker,
+                               ResultConsumer<? super I, ? super R> consumer) throws IOException {
+        try (Results<I, R> results = stream(inputs, worker)) {
+            while (results.hasNext()) {
+                R result = results.next();
+                if (!consumer.accept(results.getInput(), result)) {
+                    break;
+                }
+            }
+        }
+    }
+    public <I, R> List<R> map(List<? extends I> inputs, Worker<? super I, ? extends R> worker) throws IOException {
+        List<R> results = new ArrayList<>(inputs.size());
+        process(inputs.iterator(), worker, (input, result) -> {
+            results.add(result);
+            return true;
+        });
+        return results;
+    }
+    /**
+     * Pull style variant of {@link #process(Iterator, Worker, ResultConsumer)}, for callers
+     * which can not hand over control to a consumer. Results must be closed to release threads.
+     * */
+    public <I, R> Results<I, R> stream(Iterator<? extends I> inputs, Worker<? super I, ? extends R> worker) {
+        return new Results<>(inputs, worker, threads);
+    }
+
+    public static int defaultThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+    private static ExecutorService newExecutor(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static class Results<I, R> implements Closeable {
+        private final Iterator<? extends I> inputs;
+        private final Worker<? super I, ? extends R> worker;
+        private final ExecutorService executor;
+        private final ArrayDeque<Task<I, R>> pending;
+        private final int window;
+        private I input;
+
+        Results(Iterator<? extends I> inputs, Worker<? super I, ? extends R> worker, int threads) {
+            this.inputs = inputs;
+            this.worker = worker;
+            this.pending = new ArrayDeque<>();
+            if (threads > 1) {
+                this.executor = newExecutor(threads);
+                this.window = threads * WINDOW_PER_THREAD;
+            } else {
+                this.executor = null;
+                this.window = 0;
+            }
+        }
+        public boolean hasNext() {
+            return !pending.isEmpty() || inputs.hasNext();
+        }
+        public R next() throws IOException {
+            ExecutorService executor = this.executor;
+            if (executor == null) {
+                I input = inputs.next();
+                this.input = input;
+                return worker.apply(input);
+            }
+            Worker<? super I, ? extends R> worker = this.worker;
+            while (pending.size() < window && inputs.hasNext()) {
+                I input = inputs.next();
+                pending.add(new Task<>(input, executor.submit(() -> worker.apply(input))));
+            }
+            Task<I, R> task = pending.remove();
+            this.input = task.input;
+            return task.get();
+        }
+        /**
+         * Returns the input of the last result returned by next()
+         * */
+        public I getInput() {
+            return input;
+        }
+        @Override
+        public void close() {
+            for (Task<I, R> task : pending) {
+                task.future.cancel(true);
+            }
+            pending.clear();
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+    private static class Task<I, R> {
+        final I input;
+        final Future<? extends R> future;
+
+        Task(I input, Future<? extends R> future) {
+            this.input = input;
+            this.future = future;
+        }
+        R get() throws IOException {
+            try {
+                return future.get();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(exception.getMessage());
+            } catch (ExecutionException exception) {
+                Throwable cause = exception.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    public interface Worker<I, R> {
+        R apply(I input) throws IOException;
+    }
+    public interface ResultConsumer<I, R> {
+        /**
+         * @return false to stop processing the remaining inputs
+         * */
+        boolean accept(I input, R result) throws IOException;
+    }
+}